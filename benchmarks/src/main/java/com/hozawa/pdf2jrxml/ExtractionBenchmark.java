@@ -0,0 +1,168 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.design.JRDesignElement;
+import net.sf.jasperreports.engine.design.JasperDesign;
+import net.sf.jasperreports.engine.xml.JRXmlWriter;
+
+/**
+ * Benchmarks of each stage of converting a pdf page to jrxml.
+ * Input is a synthetic pdf page generated with the parameterised number of glyphs, paths, images and form fields.
+ *
+ * Run with:
+ *   java -jar target/benchmarks.jar ExtractionBenchmark -p glyphs=5000 -p images=0
+ *
+ * @author Hitoshi Ozawa
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+	@Param({"500", "5000"})
+	public int glyphs;
+	@Param({"100", "1000"})
+	public int paths;
+	@Param({"0", "10"})
+	public int images;
+	@Param({"0", "100"})
+	public int fields;
+
+	private File imgDir;
+	private Config config;
+	private JrxmlReport report;
+	private ImageCache imageCache;
+	private PDDocument document;
+	private PDPage page;
+	private PDFContentEngine contentEngine;	// engine that has processed the page
+	private Page extractedPage;				// page with all elements extracted
+	private JasperDesign design;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, JRException {
+		imgDir = Files.createTempDirectory("pdf2jrxml-bench").toFile();
+		config = new Config();
+		config.setImgDir(imgDir.getPath());
+		report = new JrxmlReport();
+		imageCache = new ImageCache(imgDir.getPath());
+
+		document = PDDocument.load(SyntheticPdf.create(glyphs, paths, images, fields));
+		page = document.getPage(0);
+		contentEngine = processPage();
+		extractedPage = report.extractElementsInPage(config, document, 0);
+		design = report.generateDesign(config, extractedPage);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		document.close();
+		File[] files = imgDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		imgDir.delete();
+	}
+
+	/**
+	 * Single pass of the page content stream collecting text, images and lines.
+	 */
+	@Benchmark
+	public PDFContentEngine processPage() throws IOException {
+		PDFContentEngine engine = new PDFContentEngine(page);
+		engine.setImageCache(imageCache);
+		engine.processPage(page);
+		return engine;
+	}
+
+	@Benchmark
+	public List<JRDesignElement> extractTextInPage() throws IOException {
+		return report.extractTextInPage(config, newPage(), document, contentEngine);
+	}
+
+	@Benchmark
+	public List<JRDesignElement> extractImageInPage() {
+		return report.extractImageInPage(config, newPage(), contentEngine);
+	}
+
+	@Benchmark
+	public List<JRDesignElement> extractLineInPage() {
+		return report.extractLineInPage(config, newPage(), contentEngine);
+	}
+
+	@Benchmark
+	public List<JRDesignElement> extractFormFields() throws IOException {
+		return report.extractFormFields(config, newPage(), document, 0);
+	}
+
+	@Benchmark
+	public JasperDesign generateDesign() throws JRException {
+		return report.generateDesign(config, extractedPage);
+	}
+
+	@Benchmark
+	public long writeJrxml() throws JRException {
+		CountingOutputStream out = new CountingOutputStream();
+		JRXmlWriter.writeReport(design, out, config.getEncoding());
+		return out.count;
+	}
+
+	@Benchmark
+	public long writeJrxmlStreaming() throws JRException {
+		CountingOutputStream out = new CountingOutputStream();
+		JrxmlStreamWriter writer = new JrxmlStreamWriter(out, config.getEncoding());
+		writer.writeReport(design);
+		writer.close();
+		return out.count;
+	}
+
+	private Page newPage() {
+		Page pdfPage = new Page();
+		pdfPage.setPage(page);
+		pdfPage.setPageNo(0);
+		return pdfPage;
+	}
+
+	/**
+	 * Output stream that discards written bytes and counts them.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.hozawa.pdf2jrxml;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+
+/**
+ * Generate a single page pdf with given number of glyphs, paths, images and form fields.
+ * Elements are laid out in rows on an A4 page so that their positions look like a form.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class SyntheticPdf {
+	private static final String FONT_RESOURCE = "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf";
+	private static final String WORDS = "Name Address Date Amount Total Signature Phone Account Number Remarks ";
+	private static final float MARGIN = 20;
+	private static final float ROW_HEIGHT = 12;
+	private static final int GLYPHS_PER_LINE = 80;
+
+	private SyntheticPdf() {
+	}
+
+	/**
+	 * Create pdf.
+	 *
+	 * @param numGlyphs number of characters drawn with text operators.
+	 * @param numPaths number of stroked lines. Every fourth path is a rectangle.
+	 * @param numImages number of images. Png and jpeg images are used alternately.
+	 * @param numFields number of text fields in AcroForm.
+	 * @return content of pdf file.
+	 * @throws IOException
+	 */
+	public static byte[] create(int numGlyphs, int numPaths, int numImages, int numFields) throws IOException {
+		try (PDDocument document = new PDDocument()) {
+			PDRectangle mediaBox = PDRectangle.A4;
+			PDPage page = new PDPage(mediaBox);
+			document.addPage(page);
+
+			PDFont font;
+			try (InputStream is = SyntheticPdf.class.getResourceAsStream(FONT_RESOURCE)) {
+				font = PDType0Font.load(document, is);	// embedded subset font has a "ABCDEF+" prefixed name like most pdf files
+			}
+			PDImageXObject[] images = createImages(document, numImages);
+
+			try (PDPageContentStream cs = new PDPageContentStream(document, page)) {
+				float top = mediaBox.getHeight() - MARGIN;
+				float width = mediaBox.getWidth() - MARGIN * 2;
+
+				// text
+				int numLines = (numGlyphs + GLYPHS_PER_LINE - 1) / GLYPHS_PER_LINE;
+				for (int line = 0; line < numLines; line++) {
+					int length = Math.min(GLYPHS_PER_LINE, numGlyphs - line * GLYPHS_PER_LINE);
+					cs.setNonStrokingColor(line % 3 == 0 ? Color.BLACK : Color.DARK_GRAY);
+					cs.beginText();
+					cs.setFont(font, 8);
+					cs.newLineAtOffset(MARGIN, top - (line % 60) * ROW_HEIGHT);
+					cs.showText(text(line, length));
+					cs.endText();
+				}
+
+				// lines and rectangles
+				for (int i = 0; i < numPaths; i++) {
+					float y = top - (i % 60) * ROW_HEIGHT - 2;
+					float x = MARGIN + (i / 60 % 10) * (width / 10);
+					if (i % 4 == 3) {
+						cs.addRect(x, y - ROW_HEIGHT, width / 10, ROW_HEIGHT);
+					} else {
+						cs.moveTo(x, y);
+						cs.lineTo(x + width / 10, y);
+					}
+					cs.stroke();
+				}
+
+				// images
+				for (int i = 0; i < numImages; i++) {
+					float x = MARGIN + (i % 8) * (width / 8);
+					float y = MARGIN + (i / 8 % 8) * 40;
+					cs.drawImage(images[i], x, y, 40, 20);
+				}
+			}
+
+			// form fields
+			PDAcroForm acroForm = new PDAcroForm(document);
+			document.getDocumentCatalog().setAcroForm(acroForm);
+			PDResources resources = new PDResources();
+			acroForm.setDefaultResources(resources);
+			acroForm.setDefaultAppearance("/Helv 0 Tf 0 g");
+			for (int i = 0; i < numFields; i++) {
+				PDTextField field = new PDTextField(acroForm);
+				field.setPartialName("field" + i);
+				PDAnnotationWidget widget = field.getWidgets().get(0);
+				float x = MARGIN + (i / 60 % 4) * (mediaBox.getWidth() / 4);
+				float y = mediaBox.getHeight() - MARGIN - (i % 60) * ROW_HEIGHT - ROW_HEIGHT;
+				widget.setRectangle(new PDRectangle(x, y, 100, ROW_HEIGHT));
+				widget.setPage(page);
+				page.getAnnotations().add(widget);
+				acroForm.getFields().add(field);
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			document.save(out);
+			return out.toByteArray();
+		}
+	}
+
+	private static String text(int line, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		int offset = line * 7;
+		for (int i = 0; i < length; i++) {
+			sb.append(WORDS.charAt((offset + i) % WORDS.length()));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Create distinct images so that they are not shared by the image cache.
+	 */
+	private static PDImageXObject[] createImages(PDDocument document, int numImages) throws IOException {
+		PDImageXObject[] images = new PDImageXObject[numImages];
+		for (int i = 0; i < numImages; i++) {
+			BufferedImage image = new BufferedImage(80, 40, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = image.createGraphics();
+			g.setColor(new Color(Color.HSBtoRGB(i / (float)Math.max(1, numImages), 0.6f, 0.9f)));
+			g.fillRect(0, 0, 80, 40);
+			g.setColor(Color.BLACK);
+			g.drawString("IMG" + i, 10, 25);
+			g.dispose();
+			images[i] = i % 2 == 0 ? LosslessFactory.createFromImage(document, image) : JPEGFactory.createFromImage(document, image);
+		}
+		return images;
+	}
+}
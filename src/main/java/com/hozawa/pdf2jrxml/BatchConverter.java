@@ -0,0 +1,116 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Convert all pdf files in a directory to jrxml files in a single process.
+ * Files are converted by a pipeline of stages (see ConversionPipeline), so reading and writing files overlaps with
+ * parsing of other files. Error in a file is recorded and does not stop conversion of other files.
+ * 
+ * @author Hitoshi Ozawa
+ */
+public class BatchConverter {
+	private static final String PDF_EXTENSION = ".pdf";
+	private static final String JRXML_EXTENSION = ".jrxml";
+	private static final PageRange ALL_PAGES = new PageRange("1-");
+	
+	private final Config config;
+	private final JrxmlReport report = new JrxmlReport();	// shared by the stages of the pipeline
+	
+	private final AtomicInteger numConverted = new AtomicInteger();
+	private final Map<String, String> failures = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param config configuration properties. Number of threads of each stage is taken from the thread properties.
+	 */
+	public BatchConverter(Config config) {
+		this.config = config;
+	}
+	
+	/**
+	 * Convert pdf files in input directory and generate jrxml files in output directory.
+	 * 
+	 * @param inputDir directory containing pdf files to convert.
+	 * @param outputDir directory to generate jrxml files. Created if it does not exist.
+	 * @param allPages true to generate a jrxml file for every page, false to convert only the first page.
+	 * @return number of pdf files that could not be converted.
+	 */
+	public int convertDirectory(String inputDir, String outputDir, final boolean allPages) {
+		File[] pdfFiles = new File(inputDir).listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().toLowerCase().endsWith(PDF_EXTENSION);
+			}
+		});
+		if (pdfFiles == null) {
+			failures.put(inputDir, "input directory not found");
+			return failures.size();
+		}
+		Arrays.sort(pdfFiles);
+		
+		final File outputDirectory = new File(outputDir);
+		if (!outputDirectory.exists()) {
+			outputDirectory.mkdirs();
+		}
+		
+		PageRange pageRange = config.getPages();
+		if (pageRange == null && allPages) {
+			pageRange = ALL_PAGES;
+		}
+		List<ConversionPipeline.Job> jobs = new ArrayList<ConversionPipeline.Job>();
+		for (File pdfFile : pdfFiles) {
+			String name = pdfFile.getName();
+			String jrxmlFilename = new File(outputDirectory, name.substring(0, name.length() - PDF_EXTENSION.length()) + JRXML_EXTENSION).getPath();
+			jobs.add(new ConversionPipeline.Job(pdfFile, jrxmlFilename, pageRange));
+		}
+		new ConversionPipeline(report, config).convert(jobs);
+		
+		for (ConversionPipeline.Job job : jobs) {
+			if (job.getError() != null) {
+				failures.put(job.getPdfFile().getPath(), job.getError());
+			} else if (job.getNumGenerated() > 0) {
+				numConverted.incrementAndGet();
+			} else {
+				failures.put(job.getPdfFile().getPath(), "could not read pdf file");
+			}
+		}
+		return failures.size();
+	}
+	
+	/**
+	 * Return number of pdf files converted.
+	 * 
+	 * @return number of pdf files converted.
+	 */
+	public int getNumConverted() {
+		return numConverted.get();
+	}
+	
+	/**
+	 * Return metrics of conversions in this batch.
+	 * 
+	 * @return conversion metrics.
+	 */
+	public ConversionStats getStats() {
+		return report.getStats();
+	}
+	
+	/**
+	 * Return pdf files that could not be converted with the reason.
+	 * 
+	 * @return map of pdf file name to error message.
+	 */
+	public Map<String, String> getFailures() {
+		return failures;
+	}
+}
@@ -0,0 +1,98 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.Arrays;
+
+import org.apache.pdfbox.text.TextPosition;
+
+/**
+ * Color of characters in a page, looked up by the TextPosition of the character.
+ * PDFTextStripper sorts characters by position, removes overlapping duplicates and normalizes ligatures before writing
+ * strings, so colors are looked up by the character instead of by the order characters were drawn.
+ * Colors are kept as packed RGB ints in an open addressing table keyed by identity, so no object is allocated for each character.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class ColorTrack {
+	private static final int INITIAL_CAPACITY = 64;		// must be a power of 2
+	private static final int MAX_KEPT_CAPACITY = 1 << 16;	// larger tables are not kept after clear()
+
+	private TextPosition[] keys = new TextPosition[INITIAL_CAPACITY];
+	private int[] colors = new int[INITIAL_CAPACITY];	// packed RGB of the character with the same index in keys
+	private int numChars = 0;
+
+	/**
+	 * Set color of a character.
+	 *
+	 * @param text character.
+	 * @param rgb packed RGB color (0xRRGGBB).
+	 */
+	public void add(TextPosition text, int rgb) {
+		if ((numChars + 1) * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+		int index = indexOf(text);
+		if (keys[index] == null) {
+			keys[index] = text;
+			numChars++;
+		}
+		colors[index] = rgb;
+	}
+
+	/**
+	 * Return color of a character.
+	 *
+	 * @param text character.
+	 * @return packed RGB color of the character. Black if color of the character was not set.
+	 */
+	public int get(TextPosition text) {
+		int index = indexOf(text);
+		return keys[index] == null ? 0 : colors[index];
+	}
+
+	/**
+	 * Remove all colors.
+	 */
+	public void clear() {
+		if (keys.length > MAX_KEPT_CAPACITY) {
+			keys = new TextPosition[INITIAL_CAPACITY];
+			colors = new int[INITIAL_CAPACITY];
+		} else if (numChars > 0) {
+			Arrays.fill(keys, null);
+		}
+		numChars = 0;
+	}
+
+	/**
+	 * @return number of characters added.
+	 */
+	public int size() {
+		return numChars;
+	}
+
+	/**
+	 * Return index of the character in keys, or index of the empty slot to add it.
+	 */
+	private int indexOf(TextPosition text) {
+		int mask = keys.length - 1;
+		int hash = System.identityHashCode(text);
+		int index = (hash ^ (hash >>> 16)) & mask;
+		while (keys[index] != null && keys[index] != text) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	private void resize(int capacity) {
+		TextPosition[] oldKeys = keys;
+		int[] oldColors = colors;
+		keys = new TextPosition[capacity];
+		colors = new int[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int index = indexOf(oldKeys[i]);
+				keys[index] = oldKeys[i];
+				colors[index] = oldColors[i];
+			}
+		}
+	}
+}
@@ -30,6 +30,29 @@ public class Config {
 	private final String DEFAULT_ENCODING = "UTF-8";
 	private final String DEFAULT_TITLE="PDF2Jrxml Form";
 	
+	private final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	private final int DEFAULT_IMAGE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	
+	private final float DEFAULT_LINE_MERGE_TOLERANCE = 1.0f;
+	private final float DEFAULT_TEXT_MERGE_SPACING = 0.5f;
+	
+	private final String DEFAULT_MEMORY_MODE = PdfSource.MEMORY_MODE_MAIN;
+	
+	public static final String OUTPUT_FORMAT_JRXML = "jrxml";	// jrxml file only
+	public static final String OUTPUT_FORMAT_JASPER = "jasper";	// compiled jasper file only
+	public static final String OUTPUT_FORMAT_BOTH = "both";		// jrxml and jasper files
+	private final String DEFAULT_OUTPUT_FORMAT = OUTPUT_FORMAT_JRXML;
+	private final int DEFAULT_COMPILE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	
+	private final int DEFAULT_READ_THREADS = 2;
+	private final int DEFAULT_DESIGN_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	private final int DEFAULT_WRITE_THREADS = 2;
+	private final int DEFAULT_STAGE_QUEUE = 4;
+	
+	private final int DEFAULT_SERVER_PORT = 8090;
+	private final int DEFAULT_SERVER_CONCURRENCY = Runtime.getRuntime().availableProcessors();
+	private final int DEFAULT_SERVER_QUEUE = 16;
+	
 	
 	private Properties config = new Properties();	// properties are read from properties file if found
 	
@@ -46,10 +69,43 @@ public class Config {
 	private String encoding;
 	private String title;
 	
+	private int threads;
+	private int imageThreads;
+	private boolean virtualThreads;
+	
+	private boolean validate;
+	private boolean streaming;
+	
+	private float lineMergeTolerance;
+	private float textMergeSpacing;
+	
+	private String memoryMode;
+	private int maxMainMemory;
+	private String tempDir;
+	private boolean mmap;
+	
+	private String pageCacheDir;
+	private int layoutCacheSize;
+	
+	private PageRange pages;
+	
+	private String outputFormat;
+	private String jasperCacheDir;
+	private int compileThreads;
+	
+	private int readThreads;
+	private int designThreads;
+	private int writeThreads;
+	private int stageQueue;
+	
+	private int serverPort;
+	private int serverConcurrency;
+	private int serverQueue;
+	
 	/**
 	 * Default constructor
 	 * 
-	 * @throws IOException
+	 * @throws IllegalArgumentException	pages property is not a valid page range
 	 */
 	public Config() {
 		init(PROPERTY_FILE);
@@ -59,11 +115,53 @@ public class Config {
 	 * Constructor
 	 * 
 	 * @param propertyFilename	property file to use
-	 * @throws IOException		property file not found
+	 * @throws IllegalArgumentException	pages property is not a valid page range
 	 */
 	public Config(String propertyFilename) {
 		init(propertyFilename);
 	}
+	
+	/**
+	 * Copy constructor. Used to apply settings of a single conversion without changing the base configuration.
+	 * 
+	 * @param base configuration to copy.
+	 */
+	public Config(Config base) {
+		this.config.putAll(base.config);
+		this.pdfFilename = base.pdfFilename;
+		this.jrxmlFilename = base.jrxmlFilename;
+		this.imgDir = base.imgDir;
+		this.marginLeft = base.marginLeft;
+		this.marginRight = base.marginRight;
+		this.marginTop = base.marginTop;
+		this.marginBottom = base.marginBottom;
+		this.encoding = base.encoding;
+		this.title = base.title;
+		this.threads = base.threads;
+		this.imageThreads = base.imageThreads;
+		this.virtualThreads = base.virtualThreads;
+		this.validate = base.validate;
+		this.streaming = base.streaming;
+		this.lineMergeTolerance = base.lineMergeTolerance;
+		this.textMergeSpacing = base.textMergeSpacing;
+		this.memoryMode = base.memoryMode;
+		this.maxMainMemory = base.maxMainMemory;
+		this.tempDir = base.tempDir;
+		this.mmap = base.mmap;
+		this.pageCacheDir = base.pageCacheDir;
+		this.layoutCacheSize = base.layoutCacheSize;
+		this.pages = base.pages;
+		this.outputFormat = base.outputFormat;
+		this.jasperCacheDir = base.jasperCacheDir;
+		this.compileThreads = base.compileThreads;
+		this.readThreads = base.readThreads;
+		this.designThreads = base.designThreads;
+		this.writeThreads = base.writeThreads;
+		this.stageQueue = base.stageQueue;
+		this.serverPort = base.serverPort;
+		this.serverConcurrency = base.serverConcurrency;
+		this.serverQueue = base.serverQueue;
+	}
 
 	/**
 	 * Initialize properties to use
@@ -95,6 +193,42 @@ public class Config {
 
 		setEncoding(config.getProperty("encoding"));
 		setTitle(config.getProperty("title_default"));
+		
+		setThreads(config.getProperty("threads"));
+		setImageThreads(config.getProperty("image_threads"));
+		setVirtualThreads(config.getProperty("virtual_threads"));
+		setValidate(config.getProperty("validate"));
+		setStreaming(config.getProperty("streaming"));
+		
+		setLineMergeTolerance(config.getProperty("line_merge_tolerance"));
+		setTextMergeSpacing(config.getProperty("text_merge_spacing"));
+		
+		setMemoryMode(config.getProperty("memory_mode"));
+		setMaxMainMemory(config.getProperty("max_main_memory"));
+		setTempDir(config.getProperty("temp_dir"));
+		setMmap(config.getProperty("mmap"));
+		
+		setPageCacheDir(config.getProperty("page_cache_dir"));
+		setLayoutCacheSize(config.getProperty("layout_cache_size"));
+		
+		try {
+			setPages(config.getProperty("pages"));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("pages property: " + e.getMessage(), e);
+		}
+		
+		setOutputFormat(config.getProperty("output_format"));
+		setJasperCacheDir(config.getProperty("jasper_cache_dir"));
+		setCompileThreads(config.getProperty("compile_threads"));
+		
+		setReadThreads(config.getProperty("read_threads"));
+		setDesignThreads(config.getProperty("design_threads"));
+		setWriteThreads(config.getProperty("write_threads"));
+		setStageQueue(config.getProperty("stage_queue"));
+		
+		setServerPort(config.getProperty("server_port"));
+		setServerConcurrency(config.getProperty("server_concurrency"));
+		setServerQueue(config.getProperty("server_queue"));
 
 		try {
 			if(is != null) {
@@ -208,6 +342,283 @@ public class Config {
 		}
 	}
 	
+	// threads
+	public int getThreads() {
+		return this.threads;
+	}
+	public void setThreads(String strThreads) {
+		this.threads = convertString2Int(strThreads);
+		if (this.threads < 1) {
+			this.threads = DEFAULT_THREADS;
+		}
+	}
+	
+	// imageThreads
+	public int getImageThreads() {
+		return this.imageThreads;
+	}
+	public void setImageThreads(String strImageThreads) {
+		this.imageThreads = convertString2Int(strImageThreads);
+		if (this.imageThreads < 1) {
+			this.imageThreads = DEFAULT_IMAGE_THREADS;
+		}
+	}
+	
+	// validate
+	public boolean isValidate() {
+		return this.validate;
+	}
+	public void setValidate(String strValidate) {
+		this.validate = Boolean.parseBoolean(strValidate);
+	}
+	
+	// streaming
+	public boolean isStreaming() {
+		return this.streaming;
+	}
+	public void setStreaming(String strStreaming) {
+		this.streaming = Boolean.parseBoolean(strStreaming);
+	}
+	
+	// memoryMode
+	public String getMemoryMode() {
+		return this.memoryMode;
+	}
+	public void setMemoryMode(String memoryMode) {
+		if (PdfSource.MEMORY_MODE_TEMP.equals(memoryMode) || PdfSource.MEMORY_MODE_MIXED.equals(memoryMode)) {
+			this.memoryMode = memoryMode;
+		} else {
+			this.memoryMode = DEFAULT_MEMORY_MODE;
+		}
+	}
+	
+	// maxMainMemory (MB)
+	public int getMaxMainMemory() {
+		return this.maxMainMemory;
+	}
+	public void setMaxMainMemory(String strMaxMainMemory) {
+		this.maxMainMemory = convertString2Int(strMaxMainMemory);
+	}
+	
+	// tempDir
+	public String getTempDir() {
+		return this.tempDir;
+	}
+	public void setTempDir(String tempDir) {
+		if (tempDir == null || tempDir.length() < 1) {
+			this.tempDir = null;
+		} else {
+			this.tempDir = tempDir;
+		}
+	}
+	
+	// virtualThreads (run documents, file reads and writes on virtual threads)
+	public boolean isVirtualThreads() {
+		return this.virtualThreads;
+	}
+	public void setVirtualThreads(String strVirtualThreads) {
+		this.virtualThreads = Boolean.parseBoolean(strVirtualThreads);
+	}
+	
+	// mmap
+	public boolean isMmap() {
+		return this.mmap;
+	}
+	public void setMmap(String strMmap) {
+		this.mmap = Boolean.parseBoolean(strMmap);
+	}
+	
+	// lineMergeTolerance (distance in points between lines to merge)
+	public float getLineMergeTolerance() {
+		return this.lineMergeTolerance;
+	}
+	public void setLineMergeTolerance(String strLineMergeTolerance) {
+		this.lineMergeTolerance = convertString2Float(strLineMergeTolerance);
+		if (this.lineMergeTolerance < 0) {
+			this.lineMergeTolerance = DEFAULT_LINE_MERGE_TOLERANCE;
+		}
+	}
+	
+	// textMergeSpacing (gap between text strings to merge as ratio of font size)
+	public float getTextMergeSpacing() {
+		return this.textMergeSpacing;
+	}
+	public void setTextMergeSpacing(String strTextMergeSpacing) {
+		this.textMergeSpacing = convertString2Float(strTextMergeSpacing);
+		if (this.textMergeSpacing < 0) {
+			this.textMergeSpacing = DEFAULT_TEXT_MERGE_SPACING;
+		}
+	}
+	
+	// pageCacheDir (null if page cache is not used)
+	public String getPageCacheDir() {
+		return this.pageCacheDir;
+	}
+	public void setPageCacheDir(String pageCacheDir) {
+		if (pageCacheDir == null || pageCacheDir.length() < 1) {
+			this.pageCacheDir = null;
+		} else {
+			this.pageCacheDir = pageCacheDir;
+		}
+	}
+	
+	// layoutCacheSize (number of page layouts to keep. 0 if layout cache is not used)
+	public int getLayoutCacheSize() {
+		return this.layoutCacheSize;
+	}
+	public void setLayoutCacheSize(String strLayoutCacheSize) {
+		this.layoutCacheSize = convertString2Int(strLayoutCacheSize);
+		if (this.layoutCacheSize < 0) {
+			this.layoutCacheSize = 0;
+		}
+	}
+	
+	// pages (null if pages are not selected)
+	public PageRange getPages() {
+		return this.pages;
+	}
+	public void setPages(String strPages) {
+		if (strPages == null || strPages.trim().length() < 1) {
+			this.pages = null;
+			return;
+		}
+		this.pages = new PageRange(strPages);	// IllegalArgumentException with the reason when the range is invalid
+	}
+	
+	// outputFormat (jrxml, jasper or both)
+	public String getOutputFormat() {
+		return this.outputFormat;
+	}
+	public void setOutputFormat(String outputFormat) {
+		if (OUTPUT_FORMAT_JASPER.equals(outputFormat) || OUTPUT_FORMAT_BOTH.equals(outputFormat)) {
+			this.outputFormat = outputFormat;
+		} else {
+			this.outputFormat = DEFAULT_OUTPUT_FORMAT;
+		}
+	}
+	public boolean isJrxmlOutput() {
+		return !OUTPUT_FORMAT_JASPER.equals(this.outputFormat);
+	}
+	public boolean isJasperOutput() {
+		return !OUTPUT_FORMAT_JRXML.equals(this.outputFormat);
+	}
+	
+	// jasperCacheDir (null if compiled reports are not saved)
+	public String getJasperCacheDir() {
+		return this.jasperCacheDir;
+	}
+	public void setJasperCacheDir(String jasperCacheDir) {
+		if (jasperCacheDir == null || jasperCacheDir.length() < 1) {
+			this.jasperCacheDir = null;
+		} else {
+			this.jasperCacheDir = jasperCacheDir;
+		}
+	}
+	
+	// compileThreads
+	public int getCompileThreads() {
+		return this.compileThreads;
+	}
+	public void setCompileThreads(String strCompileThreads) {
+		this.compileThreads = convertString2Int(strCompileThreads);
+		if (this.compileThreads < 1) {
+			this.compileThreads = DEFAULT_COMPILE_THREADS;
+		}
+	}
+	
+	// readThreads (batch mode: threads to open or map pdf files)
+	public int getReadThreads() {
+		return this.readThreads;
+	}
+	public void setReadThreads(String strReadThreads) {
+		this.readThreads = convertString2Int(strReadThreads);
+		if (this.readThreads < 1) {
+			this.readThreads = DEFAULT_READ_THREADS;
+		}
+	}
+	
+	// designThreads (batch mode: threads to build report designs)
+	public int getDesignThreads() {
+		return this.designThreads;
+	}
+	public void setDesignThreads(String strDesignThreads) {
+		this.designThreads = convertString2Int(strDesignThreads);
+		if (this.designThreads < 1) {
+			this.designThreads = DEFAULT_DESIGN_THREADS;
+		}
+	}
+	
+	// writeThreads (batch mode: threads to write jrxml files)
+	public int getWriteThreads() {
+		return this.writeThreads;
+	}
+	public void setWriteThreads(String strWriteThreads) {
+		this.writeThreads = convertString2Int(strWriteThreads);
+		if (this.writeThreads < 1) {
+			this.writeThreads = DEFAULT_WRITE_THREADS;
+		}
+	}
+	
+	// stageQueue (batch mode: number of documents or pages waiting between stages)
+	public int getStageQueue() {
+		return this.stageQueue;
+	}
+	public void setStageQueue(String strStageQueue) {
+		this.stageQueue = convertString2Int(strStageQueue);
+		if (this.stageQueue < 1) {
+			this.stageQueue = DEFAULT_STAGE_QUEUE;
+		}
+	}
+	
+	// serverPort
+	public int getServerPort() {
+		return this.serverPort;
+	}
+	public void setServerPort(String strServerPort) {
+		this.serverPort = convertString2Int(strServerPort);
+		if (this.serverPort < 0) {
+			this.serverPort = DEFAULT_SERVER_PORT;
+		}
+	}
+	
+	// serverConcurrency
+	public int getServerConcurrency() {
+		return this.serverConcurrency;
+	}
+	public void setServerConcurrency(String strServerConcurrency) {
+		this.serverConcurrency = convertString2Int(strServerConcurrency);
+		if (this.serverConcurrency < 1) {
+			this.serverConcurrency = DEFAULT_SERVER_CONCURRENCY;
+		}
+	}
+	
+	// serverQueue
+	public int getServerQueue() {
+		return this.serverQueue;
+	}
+	public void setServerQueue(String strServerQueue) {
+		this.serverQueue = convertString2Int(strServerQueue);
+		if (this.serverQueue < 0) {
+			this.serverQueue = DEFAULT_SERVER_QUEUE;
+		}
+	}
+	
+	private float convertString2Float(String strValue) {
+		if (strValue == null || strValue.length() < 1) {
+			return -1;
+		}
+		try {
+			float floatValue = Float.parseFloat(strValue);
+			if (floatValue < 0 || Float.isNaN(floatValue) || Float.isInfinite(floatValue)) {
+				return -1;
+			} else {
+				return floatValue;
+			}
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
 	private int convertString2Int(String strValue) {
 		if (strValue == null || strValue.length() < 1) {
 			return -1;
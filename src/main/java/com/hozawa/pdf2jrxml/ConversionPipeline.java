@@ -0,0 +1,400 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.design.JasperDesign;
+
+/**
+ * Convert many pdf files as a pipeline of stages joined by bounded queues:
+ *   1. read: open or memory-map pdf file (read_threads).
+ *   2. extract: parse the document and extract text, images, lines and form fields from its selected pages (threads).
+ *   3. design: build report design of each page (design_threads).
+ *   4. write: write jrxml file of each page and start compiling it when jasper output is selected (write_threads).
+ * Each stage has its own pool of threads, so reading and writing files of some documents overlaps with parsing and
+ * building designs of other documents. A stage waits when the queue to the next stage is full (stage_queue), so the
+ * number of loaded documents and pages in memory stays bounded when the writer is slower than the readers.
+ * Documents are parsed and their pages are extracted on a pool of threads shared by all documents. When fewer documents
+ * than threads are being extracted, the pages of a document are spread across the idle threads of the pool, each thread
+ * with its own PDDocument. Otherwise pages are extracted from the one PDDocument already loaded, so a file is not parsed
+ * again by each thread. Pages are passed to the design stage in order.
+ * In virtual thread mode, read, extract and write stages run on virtual threads with one reader for each file, and
+ * parsing and extraction run on the shared parse pool of the report, so CPU-bound work does not pin carrier threads.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class ConversionPipeline {
+	private static final Object END = new Object();	// put in a queue after the last item
+
+	private final JrxmlReport report;
+	private final Config config;
+
+	/**
+	 * Constructor
+	 *
+	 * @param report report to convert pages with. Caches and metrics of the report are shared by all stages.
+	 * @param config configuration properties. Number of threads of each stage and size of queues are taken from it.
+	 */
+	public ConversionPipeline(JrxmlReport report, Config config) {
+		this.report = report;
+		this.config = config;
+	}
+
+	/**
+	 * Convert pdf files. Returns after all files have been converted. Result of each file is set in its job.
+	 *
+	 * @param jobs pdf files to convert.
+	 */
+	public void convert(List<Job> jobs) {
+		int numDocuments = Math.max(1, jobs.size());
+		boolean isVirtual = config.isVirtualThreads();
+		ExecutorService parseExecutor = isVirtual ? report.getParseExecutor()
+				: TaskExecutors.newFixedThreadPool("pdf2jrxml-parse", config.getThreads());
+		WriteStage writeStage = new WriteStage(config.getWriteThreads(), isVirtual);
+		DesignStage designStage = new DesignStage(config.getDesignThreads(), writeStage);
+		ExtractStage extractStage = new ExtractStage(Math.min(config.getThreads(), numDocuments), isVirtual, parseExecutor, designStage);
+		ReadStage readStage = new ReadStage(isVirtual ? numDocuments : Math.min(config.getReadThreads(), numDocuments), isVirtual, extractStage);
+		List<Stage<?>> stages = Arrays.asList(readStage, extractStage, designStage, writeStage);
+		for (Stage<?> stage : stages) {
+			stage.start();
+		}
+		try {
+			for (Job job : jobs) {
+				readStage.put(job);
+			}
+			for (Stage<?> stage : stages) {
+				stage.finish();	// stages end in order so that every item reaches the last stage
+			}
+		} catch (InterruptedException e) {
+			for (Stage<?> stage : stages) {
+				stage.shutdownNow();
+			}
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			if (!isVirtual) {
+				parseExecutor.shutdown();
+			}
+		}
+
+		for (Job job : jobs) {
+			try {
+				report.awaitReports(job.reports);
+			} catch (JRException e) {
+				job.fail(e);
+			}
+			if (job.getError() == null && job.getNumGenerated() > 0) {
+				report.getStats().addFile();
+			}
+		}
+	}
+
+	/**
+	 * Pdf file to convert and the result of its conversion.
+	 */
+	public static class Job {
+		private final File pdfFile;
+		private final String jrxmlFilename;
+		private final PageRange pageRange;
+		private final AtomicInteger numGenerated = new AtomicInteger();
+		private final List<Future<Void>> reports = Collections.synchronizedList(new ArrayList<Future<Void>>());	// jasper files being compiled
+		private volatile String error;
+
+		/**
+		 * Constructor
+		 *
+		 * @param pdfFile pdf file to convert.
+		 * @param jrxmlFilename path to jrxml file to generate.
+		 * @param pageRange pages to convert. Page number is added to the jrxml file names.
+		 *                  null to convert only the first page to jrxmlFilename.
+		 */
+		public Job(File pdfFile, String jrxmlFilename, PageRange pageRange) {
+			this.pdfFile = pdfFile;
+			this.jrxmlFilename = jrxmlFilename;
+			this.pageRange = pageRange;
+		}
+
+		/**
+		 * @return pdf file to convert.
+		 */
+		public File getPdfFile() {
+			return this.pdfFile;
+		}
+
+		/**
+		 * @return number of jrxml files generated.
+		 */
+		public int getNumGenerated() {
+			return this.numGenerated.get();
+		}
+
+		/**
+		 * @return first error while converting the file. null if there was no error.
+		 */
+		public String getError() {
+			return this.error;
+		}
+
+		private synchronized void fail(Throwable e) {
+			if (this.error == null) {
+				this.error = e.toString();
+			}
+		}
+
+		private String getPageFilename(JrxmlReport report, int pageNo) {
+			return pageRange == null ? jrxmlFilename : report.getPageFilename(jrxmlFilename, pageNo);
+		}
+	}
+
+	/**
+	 * Pdf file opened by the read stage.
+	 */
+	private static class OpenedFile {
+		private final Job job;
+		private final PdfSource source;
+
+		OpenedFile(Job job, PdfSource source) {
+			this.job = job;
+			this.source = source;
+		}
+	}
+
+	/**
+	 * Page extracted by the extract stage and its design built by the design stage.
+	 */
+	private static class PageItem {
+		private final Job job;
+		private final Page page;
+		private final String jrxmlFilename;
+		private JasperDesign design;	// null if the page is written from a cache
+
+		PageItem(Job job, Page page, String jrxmlFilename) {
+			this.job = job;
+			this.page = page;
+			this.jrxmlFilename = jrxmlFilename;
+		}
+	}
+
+	/**
+	 * Stage of the pipeline. Workers take items from the queue of the stage until END is taken.
+	 * Error in an item is recorded in the job of the item and does not stop the stage.
+	 *
+	 * @param <T> class of items processed by the stage.
+	 */
+	private abstract static class Stage<T> {
+		private final BlockingQueue<Object> queue;
+		private final ExecutorService executor;
+		private final int numWorkers;
+
+		Stage(String name, int numWorkers, boolean isVirtual, int queueSize) {
+			this.numWorkers = numWorkers;
+			this.queue = new ArrayBlockingQueue<Object>(queueSize);
+			this.executor = isVirtual ? TaskExecutors.newVirtualThreadExecutor("pdf2jrxml-" + name)
+					: TaskExecutors.newFixedThreadPool("pdf2jrxml-" + name, numWorkers);
+		}
+
+		void start() {
+			for (int i = 0; i < numWorkers; i++) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							work();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+			executor.shutdown();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void work() throws InterruptedException {
+			Object item;
+			while ((item = queue.take()) != END) {
+				try {
+					process((T)item);
+				} catch (InterruptedException e) {
+					throw e;
+				} catch (Exception e) {
+					getJob((T)item).fail(e);
+				} catch (OutOfMemoryError e) {
+					getJob((T)item).fail(e);
+				}
+			}
+			queue.put(END);	// let other workers of the stage end
+		}
+
+		/**
+		 * Add item to the stage. Waits while the queue of the stage is full.
+		 */
+		void put(T item) throws InterruptedException {
+			queue.put(item);
+		}
+
+		/**
+		 * Wait for workers to process all items added to the stage.
+		 */
+		void finish() throws InterruptedException {
+			queue.put(END);
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+
+		void shutdownNow() {
+			executor.shutdownNow();
+		}
+
+		abstract Job getJob(T item);
+
+		abstract void process(T item) throws Exception;
+	}
+
+	/**
+	 * Open pdf file. File is memory-mapped when mmap is set. Document is parsed by the extract stage.
+	 */
+	private class ReadStage extends Stage<Job> {
+		private final ExtractStage next;
+
+		ReadStage(int numWorkers, boolean isVirtual, ExtractStage next) {
+			super("read", numWorkers, isVirtual, config.getStageQueue());
+			this.next = next;
+		}
+
+		@Override
+		Job getJob(Job job) {
+			return job;
+		}
+
+		@Override
+		void process(Job job) throws IOException, InterruptedException {
+			next.put(new OpenedFile(job, new PdfSource(config, job.pdfFile)));
+		}
+	}
+
+	/**
+	 * Parse the document of a pdf file and extract elements from its selected pages. Parsing and extraction run on the
+	 * parse pool. Pages of the document are extracted in parallel and put to the design stage in page order.
+	 */
+	private class ExtractStage extends Stage<OpenedFile> {
+		private final ExecutorService parseExecutor;
+		private final DesignStage next;
+		private final AtomicInteger numExtracting = new AtomicInteger();	// documents being loaded or extracted
+
+		ExtractStage(int numWorkers, boolean isVirtual, ExecutorService parseExecutor, DesignStage next) {
+			super("extract", numWorkers, isVirtual, config.getStageQueue());
+			this.parseExecutor = parseExecutor;
+			this.next = next;
+		}
+
+		@Override
+		Job getJob(OpenedFile opened) {
+			return opened.job;
+		}
+
+		@Override
+		void process(final OpenedFile opened) throws Exception {
+			numExtracting.incrementAndGet();
+			try {
+				extract(opened);
+			} finally {
+				numExtracting.decrementAndGet();
+			}
+		}
+
+		private void extract(final OpenedFile opened) throws Exception {
+			Future<PDDocument> loading = parseExecutor.submit(new Callable<PDDocument>() {
+				@Override
+				public PDDocument call() throws IOException {
+					return report.loadDocument(opened.source);
+				}
+			});
+			PDDocument document;
+			try {
+				document = loading.get();
+			} catch (InterruptedException e) {
+				loading.cancel(true);
+				throw e;
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+			}
+			final Job job = opened.job;
+			final List<Integer> pageNos = job.pageRange == null ? Collections.singletonList(0)
+					: JrxmlReport.getPageNos(job.pageRange, document.getNumberOfPages());
+			// spread pages over more documents only when threads of the pool would otherwise be idle
+			int maxWorkers = Math.max(1, config.getThreads() / Math.max(1, numExtracting.get()));
+			report.extractElementsInPages(config, opened.source, document, pageNos, parseExecutor, maxWorkers, new JrxmlReport.PageConsumer() {
+				private int index = 0;	// pages are received in the order of pageNos
+
+				@Override
+				public void accept(Page page) throws InterruptedException {
+					int pageNo = pageNos.get(index++);
+					if (page == null) {
+						job.fail(new IOException("could not read page " + (pageNo + 1)));	// other pages are still converted
+						return;
+					}
+					next.put(new PageItem(job, page, job.getPageFilename(report, pageNo)));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Build report design of a page.
+	 */
+	private class DesignStage extends Stage<PageItem> {
+		private final WriteStage next;
+
+		DesignStage(int numWorkers, WriteStage next) {
+			super("design", numWorkers, false, config.getStageQueue());
+			this.next = next;
+		}
+
+		@Override
+		Job getJob(PageItem item) {
+			return item.job;
+		}
+
+		@Override
+		void process(PageItem item) throws JRException, InterruptedException {
+			item.design = report.buildDesign(config, item.page);
+			next.put(item);
+		}
+	}
+
+	/**
+	 * Write jrxml file of a page after the images of the page are saved.
+	 */
+	private class WriteStage extends Stage<PageItem> {
+		WriteStage(int numWorkers, boolean isVirtual) {
+			super("write", numWorkers, isVirtual, config.getStageQueue());
+		}
+
+		@Override
+		Job getJob(PageItem item) {
+			return item.job;
+		}
+
+		@Override
+		void process(PageItem item) throws JRException {
+			report.awaitImages(item.page);
+			item.job.reports.add(report.writeJrxml(config, item.page, item.design, item.jrxmlFilename));
+			item.job.numGenerated.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,329 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.sf.jasperreports.engine.JRException;
+
+/**
+ * Local http server to convert pdf files in a long-running jvm.
+ * Server listens on the loopback address only.
+ *
+ *   POST /convert  body is the pdf file. Query parameters:
+ *     page=n         page to convert (default:1)
+ *     all=true       convert all pages. Response is a zip file.
+ *     pages=1-5,12   convert pages in the range. Response is a zip file.
+ *     format=zip     return a zip file with jrxml and image files instead of jrxml.
+ *     margin_left, margin_right, margin_top, margin_bottom, encoding, title_default, validate, streaming,
+ *     memory_mode, max_main_memory  override configuration for this request.
+ *   GET /metrics   returns metrics of all conversions done by the server as json.
+ *   GET /health    returns "OK".
+ *
+ * At most server_concurrency conversions run at the same time and up to server_queue requests wait for a free slot.
+ * Requests beyond that are rejected with 503. Pages are extracted on one pool of server_concurrency threads shared by
+ * all conversions, and a file is spread over more threads only while fewer conversions are running.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class ConversionServer {
+	private static final List<String> OVERRIDABLE_PROPERTIES = Arrays.asList("margin_left", "margin_right", "margin_top",
+			"margin_bottom", "encoding", "title_default", "validate", "streaming", "memory_mode", "max_main_memory");
+	private static final Pattern IMAGE_EXPRESSION = Pattern.compile("<imageExpression><!\\[CDATA\\[\"(.*?)\"\\]\\]></imageExpression>");
+
+	private final Config config;
+	private final JrxmlReport report = new JrxmlReport();	// shared to reuse image cache and encoder threads
+	private final Semaphore conversionSlots;
+	private final int maxRequests;
+	private final AtomicInteger activeRequests = new AtomicInteger();
+	private HttpServer server;
+	private ExecutorService executor;
+	private ExecutorService parseExecutor;	// extracts pages of all conversions
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config base configuration. Requests may override some properties.
+	 */
+	public ConversionServer(Config config) {
+		this.config = config;
+		this.conversionSlots = new Semaphore(config.getServerConcurrency(), true);
+		this.maxRequests = config.getServerConcurrency() + config.getServerQueue();
+	}
+
+	/**
+	 * Start listening on server_port of the loopback address.
+	 *
+	 * @throws IOException when port could not be opened.
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getServerPort()), 0);
+		executor = config.isVirtualThreads() ? TaskExecutors.newVirtualThreadExecutor("pdf2jrxml-request") : Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		parseExecutor = TaskExecutors.newFixedThreadPool("pdf2jrxml-parse", config.getServerConcurrency());
+		server.createContext("/convert", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleConvert(exchange);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = report.getStats().toJson().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		server.createContext("/health", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				sendText(exchange, 200, "OK");
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Stop server. Conversions in progress are given the delay to finish.
+	 *
+	 * @param delaySeconds seconds to wait for conversions in progress.
+	 */
+	public void stop(int delaySeconds) {
+		if (server != null) {
+			server.stop(delaySeconds);
+			executor.shutdown();
+			parseExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * @return port the server is listening on.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handleConvert(HttpExchange exchange) throws IOException {
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			sendText(exchange, 405, "use POST with pdf file as body");
+			return;
+		}
+		try {
+			if (activeRequests.incrementAndGet() > maxRequests) {
+				sendText(exchange, 503, "too many requests");
+				return;
+			}
+			try {
+				conversionSlots.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				sendText(exchange, 503, "server is stopping");
+				return;
+			}
+			try {
+				convert(exchange);
+			} finally {
+				conversionSlots.release();
+			}
+		} finally {
+			activeRequests.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+	private void convert(HttpExchange exchange) throws IOException {
+		Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+		Config requestConfig = new Config(config);
+		requestConfig.setOutputFormat(Config.OUTPUT_FORMAT_JRXML);	// response is jrxml
+		for (Map.Entry<String, String> param : params.entrySet()) {
+			if (OVERRIDABLE_PROPERTIES.contains(param.getKey())) {
+				setProperty(requestConfig, param.getKey(), param.getValue());
+			}
+		}
+		boolean allPages = Boolean.parseBoolean(params.get("all"));
+		PageRange pageRange = null;
+		if (params.containsKey("pages")) {
+			try {
+				pageRange = new PageRange(params.get("pages"));
+			} catch (IllegalArgumentException e) {
+				sendText(exchange, 400, e.getMessage());
+				return;
+			}
+		}
+		boolean zip = allPages || pageRange != null || "zip".equals(params.get("format"));
+		int pageNo;
+		try {
+			pageNo = params.containsKey("page") ? Integer.parseInt(params.get("page")) - 1 : 0;
+		} catch (NumberFormatException e) {
+			sendText(exchange, 400, "invalid page: " + params.get("page"));
+			return;
+		}
+
+		File workDir = Files.createTempDirectory("pdf2jrxml").toFile();
+		try {
+			File pdfFile = new File(workDir, "input.pdf");
+			try (InputStream in = exchange.getRequestBody()) {
+				Files.copy(in, pdfFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			if (pdfFile.length() == 0) {
+				sendText(exchange, 400, "request body must be a pdf file");
+				return;
+			}
+			File jrxmlFile = new File(workDir, "report.jrxml");
+			List<File> jrxmlFiles = new ArrayList<File>();
+			try {
+				if (allPages || pageRange != null) {
+					// spread pages over more threads only when other conversions leave threads of the pool idle
+					int running = config.getServerConcurrency() - conversionSlots.availablePermits();
+					int maxWorkers = Math.max(1, config.getServerConcurrency() / Math.max(1, running));
+					report.generateJrxmlPages(requestConfig, pdfFile.getPath(), jrxmlFile.getPath(), pageRange, parseExecutor, maxWorkers);
+					for (File file : workDir.listFiles()) {
+						if (file.getName().endsWith(".jrxml")) {
+							jrxmlFiles.add(file);
+						}
+					}
+					Collections.sort(jrxmlFiles, new Comparator<File>() {
+						@Override
+						public int compare(File f1, File f2) {	// order by page number (report_2 before report_10)
+							int diff = f1.getName().length() - f2.getName().length();
+							return diff != 0 ? diff : f1.getName().compareTo(f2.getName());
+						}
+					});
+				} else if (report.generateJrxml(requestConfig, pdfFile.getPath(), jrxmlFile.getPath(), pageNo)) {
+					jrxmlFiles.add(jrxmlFile);
+				}
+			} catch (JRException e) {
+				sendText(exchange, 500, "conversion failed: " + e.getMessage());
+				return;
+			}
+			if (jrxmlFiles.isEmpty()) {
+				sendText(exchange, 422, "pdf file or page could not be read");
+				return;
+			}
+			if (zip) {
+				exchange.getResponseHeaders().set("Content-Type", "application/zip");
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream out = exchange.getResponseBody()) {
+					writeZip(out, jrxmlFiles, requestConfig.getEncoding());
+				}
+			} else {
+				exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=" + requestConfig.getEncoding());
+				exchange.sendResponseHeaders(200, jrxmlFile.length());
+				try (OutputStream out = exchange.getResponseBody()) {
+					Files.copy(jrxmlFile.toPath(), out);
+				}
+			}
+		} finally {
+			deleteRecursively(workDir);
+		}
+	}
+
+	/**
+	 * Write jrxml files and the image files they reference to zip. Images are stored under the path used in the jrxml.
+	 */
+	private void writeZip(OutputStream out, List<File> jrxmlFiles, String encoding) throws IOException {
+		Set<String> imagePaths = new LinkedHashSet<String>();
+		try (ZipOutputStream zip = new ZipOutputStream(out)) {
+			for (File jrxmlFile : jrxmlFiles) {
+				byte[] content = Files.readAllBytes(jrxmlFile.toPath());
+				Matcher matcher = IMAGE_EXPRESSION.matcher(new String(content, encoding));
+				while (matcher.find()) {
+					imagePaths.add(matcher.group(1));
+				}
+				zip.putNextEntry(new ZipEntry(jrxmlFile.getName()));
+				zip.write(content);
+				zip.closeEntry();
+			}
+			for (String imagePath : imagePaths) {
+				File imageFile = new File(imagePath);
+				if (!imageFile.isFile()) {
+					continue;
+				}
+				zip.putNextEntry(new ZipEntry(imagePath.replaceFirst("^([A-Za-z]:)?[/\\\\]+", "")));
+				Files.copy(imageFile.toPath(), zip);
+				zip.closeEntry();
+			}
+		}
+	}
+
+	private static void setProperty(Config config, String name, String value) {
+		switch (name) {
+		case "margin_left": config.setMarginLeft(value); break;
+		case "margin_right": config.setMarginRight(value); break;
+		case "margin_top": config.setMarginTop(value); break;
+		case "margin_bottom": config.setMarginBottom(value); break;
+		case "encoding": config.setEncoding(value); break;
+		case "title_default": config.setTitle(value); break;
+		case "validate": config.setValidate(value); break;
+		case "streaming": config.setStreaming(value); break;
+		case "memory_mode": config.setMemoryMode(value); break;
+		case "max_main_memory": config.setMaxMainMemory(value); break;
+		default: break;
+		}
+	}
+
+	private static Map<String, String> parseQuery(String query) throws IOException {
+		if (query == null || query.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		for (String pair : query.split("&")) {
+			int pos = pair.indexOf('=');
+			String name = pos < 0 ? pair : pair.substring(0, pos);
+			String value = pos < 0 ? "" : pair.substring(pos + 1);
+			params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+		}
+		return params;
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,247 @@
+package com.hozawa.pdf2jrxml;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sf.jasperreports.engine.design.JRDesignElement;
+import net.sf.jasperreports.engine.design.JRDesignImage;
+import net.sf.jasperreports.engine.design.JRDesignLine;
+import net.sf.jasperreports.engine.design.JRDesignRectangle;
+import net.sf.jasperreports.engine.design.JRDesignStaticText;
+import net.sf.jasperreports.engine.design.JRDesignTextField;
+
+/**
+ * Metrics of conversions. Records wall time and allocated bytes of each stage, number of generated elements by type
+ * and number of bytes written. Safe to update from multiple threads, so a single instance may collect metrics of all
+ * conversions in batch and server mode.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class ConversionStats {
+	/**
+	 * Stages of conversion.
+	 */
+	public enum Stage {
+		LOAD("load"),				// parse pdf document
+		CONTENT("content"),			// single pass of page content stream (text, images, lines)
+		TEXT("text"),				// create static text elements
+		IMAGE("image"),				// create image elements
+		LINE("line"),				// create line and rectangle elements
+		FORM("form"),				// create text field elements from AcroForm
+		IMAGE_SAVE("imageSave"),	// wait for images to be saved
+		DESIGN("design"),			// build JasperDesign
+		VALIDATE("validate"),		// verify JasperDesign
+		WRITE("write"),				// write jrxml file
+		COMPILE("compile");			// compile jrxml into jasper file
+
+		private final String jsonName;
+
+		Stage(String jsonName) {
+			this.jsonName = jsonName;
+		}
+	}
+
+	private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = getThreadMXBean();
+
+	private final Map<Stage, LongAdder> stageCounts = new EnumMap<Stage, LongAdder>(Stage.class);
+	private final Map<Stage, LongAdder> stageNanos = new EnumMap<Stage, LongAdder>(Stage.class);
+	private final Map<Stage, LongAdder> stageAllocatedBytes = new EnumMap<Stage, LongAdder>(Stage.class);
+	private final Map<String, LongAdder> elementCounts = new ConcurrentHashMap<String, LongAdder>();
+	private final LongAdder numFiles = new LongAdder();
+	private final LongAdder numPages = new LongAdder();
+	private final LongAdder numCachedPages = new LongAdder();
+	private final LongAdder numLayoutPages = new LongAdder();
+	private final LongAdder numMergedLines = new LongAdder();
+	private final LongAdder numMergedTexts = new LongAdder();
+	private final LongAdder numCompiledReports = new LongAdder();
+	private final LongAdder numReusedReports = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+
+	public ConversionStats() {
+		for (Stage stage : Stage.values()) {
+			stageCounts.put(stage, new LongAdder());
+			stageNanos.put(stage, new LongAdder());
+			stageAllocatedBytes.put(stage, new LongAdder());
+		}
+	}
+
+	/**
+	 * Start timing a stage in the current thread.
+	 *
+	 * @param stage stage to time.
+	 * @return timer to stop when the stage ends.
+	 */
+	public Timer start(Stage stage) {
+		return new Timer(stage);
+	}
+
+	/**
+	 * Count generated elements by type.
+	 *
+	 * @param elements generated elements.
+	 */
+	public void addElements(Iterable<? extends JRDesignElement> elements) {
+		for (JRDesignElement element : elements) {
+			String type = getElementType(element);
+			LongAdder count = elementCounts.get(type);
+			if (count == null) {
+				elementCounts.putIfAbsent(type, new LongAdder());
+				count = elementCounts.get(type);
+			}
+			count.increment();
+		}
+	}
+
+	public void addFile() {
+		numFiles.increment();
+	}
+
+	public void addPage() {
+		numPages.increment();
+	}
+
+	public void addCachedPage() {
+		numCachedPages.increment();
+	}
+
+	public void addLayoutPage() {
+		numLayoutPages.increment();
+	}
+
+	/**
+	 * @param count number of line and rectangle elements removed by merging.
+	 */
+	public void addMergedLines(int count) {
+		numMergedLines.add(count);
+	}
+
+	/**
+	 * @param count number of static text elements removed by merging.
+	 */
+	public void addMergedTexts(int count) {
+		numMergedTexts.add(count);
+	}
+
+	public void addCompiledReport() {
+		numCompiledReports.increment();
+	}
+
+	/**
+	 * Count jasper file copied from a report compiled before instead of compiling the jrxml.
+	 */
+	public void addReusedReport() {
+		numReusedReports.increment();
+	}
+
+	public void addBytesWritten(long bytes) {
+		bytesWritten.add(bytes);
+	}
+
+	/**
+	 * Return metrics as json.
+	 * Stage times are in milliseconds. allocatedBytes is -1 when the jvm does not support per-thread allocation counters.
+	 *
+	 * @return json string.
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"files\": ").append(numFiles.sum()).append(",\n");
+		sb.append("  \"pages\": ").append(numPages.sum()).append(",\n");
+		sb.append("  \"cachedPages\": ").append(numCachedPages.sum()).append(",\n");
+		sb.append("  \"layoutPages\": ").append(numLayoutPages.sum()).append(",\n");
+		sb.append("  \"mergedLines\": ").append(numMergedLines.sum()).append(",\n");
+		sb.append("  \"mergedTexts\": ").append(numMergedTexts.sum()).append(",\n");
+		sb.append("  \"compiledReports\": ").append(numCompiledReports.sum()).append(",\n");
+		sb.append("  \"reusedReports\": ").append(numReusedReports.sum()).append(",\n");
+		sb.append("  \"bytesWritten\": ").append(bytesWritten.sum()).append(",\n");
+		sb.append("  \"elements\": {");
+		String separator = "";
+		for (Map.Entry<String, LongAdder> entry : new TreeMap<String, LongAdder>(elementCounts).entrySet()) {
+			sb.append(separator).append("\n    \"").append(entry.getKey()).append("\": ").append(entry.getValue().sum());
+			separator = ",";
+		}
+		sb.append(separator.isEmpty() ? "},\n" : "\n  },\n");
+		sb.append("  \"stages\": {");
+		separator = "";
+		for (Stage stage : Stage.values()) {
+			sb.append(separator).append("\n    \"").append(stage.jsonName).append("\": {")
+				.append("\"count\": ").append(stageCounts.get(stage).sum())
+				.append(", \"timeMillis\": ").append(String.format(Locale.ROOT, "%.3f", stageNanos.get(stage).sum() / 1e6))
+				.append(", \"allocatedBytes\": ").append(THREAD_MX_BEAN != null ? stageAllocatedBytes.get(stage).sum() : -1)
+				.append("}");
+			separator = ",";
+		}
+		sb.append("\n  }\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private static String getElementType(JRDesignElement element) {
+		if (element instanceof JRDesignStaticText) {
+			return "staticText";
+		} else if (element instanceof JRDesignTextField) {
+			return "textField";
+		} else if (element instanceof JRDesignImage) {
+			return "image";
+		} else if (element instanceof JRDesignLine) {
+			return "line";
+		} else if (element instanceof JRDesignRectangle) {
+			return "rectangle";
+		}
+		return element.getClass().getSimpleName();
+	}
+
+	/**
+	 * Return bean to read allocated bytes of threads. null if not supported by the jvm.
+	 */
+	private static com.sun.management.ThreadMXBean getThreadMXBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+				if (sunBean.isThreadAllocatedMemorySupported()) {
+					sunBean.setThreadAllocatedMemoryEnabled(true);
+					return sunBean;
+				}
+			}
+		} catch (LinkageError e) {
+			// com.sun.management is not available in this jvm
+		} catch (UnsupportedOperationException e) {
+		}
+		return null;
+	}
+
+	private static long getAllocatedBytes() {
+		return THREAD_MX_BEAN != null ? THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+
+	/**
+	 * Timer of a stage. Must be stopped in the thread that started it.
+	 */
+	public class Timer {
+		private final Stage stage;
+		private final long startNanos;
+		private final long startAllocatedBytes;
+
+		private Timer(Stage stage) {
+			this.stage = stage;
+			this.startAllocatedBytes = getAllocatedBytes();
+			this.startNanos = System.nanoTime();
+		}
+
+		/**
+		 * Record time and allocated bytes since the timer was started.
+		 */
+		public void stop() {
+			stageNanos.get(stage).add(System.nanoTime() - startNanos);
+			stageAllocatedBytes.get(stage).add(getAllocatedBytes() - startAllocatedBytes);
+			stageCounts.get(stage).increment();
+		}
+	}
+}
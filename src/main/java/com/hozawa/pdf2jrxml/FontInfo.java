@@ -0,0 +1,155 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.text.TextPosition;
+
+/**
+ * Attributes of a pdf font used to create text elements. Attributes are read from the font once and shared by all
+ * text strings drawn with the font. Glyph widths are read from the font on first use and kept in a table.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class FontInfo {
+	private static final float DEFAULT_CAP_HEIGHT = 700;	// cap height when font descriptor has none (1/1000 of font size)
+
+	private final PDFont font;
+	private final String displayName;
+	private final float capHeight;
+	private final float fontWeight;
+	private final boolean bold;
+	private final boolean forceBold;
+	private final boolean italic;
+	private final float[] singleByteWidths = new float[256];	// width of character codes 0-255. NaN if not read yet
+	private final Map<Integer, Float> multiByteWidths = new HashMap<Integer, Float>();
+
+	/**
+	 * Constructor. Read attributes of the font.
+	 *
+	 * @param font pdf font.
+	 */
+	public FontInfo(PDFont font) {
+		this.font = font;
+		String name = font.getName();
+		this.displayName = getDisplayName(name);
+		this.bold = name != null && name.toLowerCase().contains("bold");
+
+		PDFontDescriptor fontDescriptor = font.getFontDescriptor();
+		if (fontDescriptor != null) {
+			float height = fontDescriptor.getCapHeight();
+			if (height <= 0) {
+				height = fontDescriptor.getAscent();
+			}
+			this.capHeight = height > 0 ? height : DEFAULT_CAP_HEIGHT;
+			this.fontWeight = fontDescriptor.getFontWeight();
+			this.forceBold = fontDescriptor.isForceBold();
+			this.italic = fontDescriptor.isItalic();
+		} else {
+			this.capHeight = DEFAULT_CAP_HEIGHT;
+			this.fontWeight = 0;
+			this.forceBold = false;
+			this.italic = false;
+		}
+		Arrays.fill(singleByteWidths, Float.NaN);
+	}
+
+	/**
+	 * Extract font name to use in jrxml. Subset prefix (e.g. "ABCDEF+") and style suffix (e.g. "-Bold") are removed.
+	 *
+	 * @param name name of the font in pdf.
+	 * @return font name. null if name is null.
+	 */
+	static String getDisplayName(String name) {
+		if (name == null) {
+			return null;
+		}
+		String fontName = name.substring(name.lastIndexOf('+') + 1);
+		int hyphenPos = fontName.indexOf('-');
+		if (hyphenPos > 0) {
+			fontName = fontName.substring(0, hyphenPos);
+		}
+		return fontName;
+	}
+
+	/**
+	 * Return width of characters in 1/1000 of font size. Width of each character code is read from the font once.
+	 *
+	 * @param textPositions characters drawn with this font.
+	 * @return total width of the characters.
+	 */
+	public float getWidth(List<TextPosition> textPositions) {
+		float width = 0;
+		for (TextPosition textPosition : textPositions) {
+			int[] codes = textPosition.getCharacterCodes();
+			if (codes == null) {
+				continue;
+			}
+			for (int code : codes) {
+				width += getGlyphWidth(code);
+			}
+		}
+		return width;
+	}
+
+	private float getGlyphWidth(int code) {
+		if (code >= 0 && code < singleByteWidths.length) {
+			float width = singleByteWidths[code];
+			if (Float.isNaN(width)) {
+				width = readGlyphWidth(code);
+				singleByteWidths[code] = width;
+			}
+			return width;
+		}
+		Float width = multiByteWidths.get(code);
+		if (width == null) {
+			width = readGlyphWidth(code);
+			multiByteWidths.put(code, width);
+		}
+		return width;
+	}
+
+	private float readGlyphWidth(int code) {
+		try {
+			return font.getWidth(code);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	public String getDisplayName() {
+		return this.displayName;
+	}
+
+	/**
+	 * @return cap height in 1/1000 of font size.
+	 */
+	public float getCapHeight() {
+		return this.capHeight;
+	}
+	public float getFontWeight() {
+		return this.fontWeight;
+	}
+
+	/**
+	 * @return true if font name contains "bold".
+	 */
+	public boolean isBold() {
+		return this.bold;
+	}
+
+	/**
+	 * @return true if font descriptor has force bold flag.
+	 */
+	public boolean isForceBold() {
+		return this.forceBold;
+	}
+	public boolean isItalic() {
+		return this.italic;
+	}
+}
@@ -0,0 +1,228 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDCheckBox;
+import org.apache.pdfbox.pdmodel.interactive.form.PDChoice;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDListBox;
+import org.apache.pdfbox.pdmodel.interactive.form.PDRadioButton;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTerminalField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDVariableText;
+
+/**
+ * Index of form widgets by page. Fields of the AcroForm are walked once, including fields nested under other fields,
+ * and each widget of a field is assigned to the page it is drawn on, so converting a page only visits its own widgets.
+ * Page of a widget is read from its /P entry. Widgets without /P are looked up in /Annots of the pages, which are read
+ * only when such a widget is found. Push buttons and signatures are not indexed because they have no value to fill in.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class FormIndex {
+	private final Map<Integer, List<FormWidget>> pageWidgets = new HashMap<Integer, List<FormWidget>>();	// page number -> widgets
+
+	/**
+	 * Constructor. Build index of widgets in the document.
+	 *
+	 * @param document pdf document.
+	 */
+	public FormIndex(PDDocument document) {
+		PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
+		if (acroForm == null) {
+			return;	// document has no form
+		}
+		Map<COSDictionary, Integer> pageNos = new HashMap<COSDictionary, Integer>();	// page dictionary -> page number
+		int pageNo = 0;
+		for (PDPage page : document.getPages()) {
+			pageNos.put(page.getCOSObject(), pageNo++);
+		}
+		Map<COSDictionary, Integer> annotationPageNos = null;	// widget dictionary -> page number. read on first use
+		for (PDField field : acroForm.getFieldTree()) {
+			if (!(field instanceof PDTerminalField)) {
+				continue;
+			}
+			Class<?> valueClass = getValueClass((PDTerminalField)field);
+			if (valueClass == null) {
+				continue;	// push buttons and signatures have no value to fill in
+			}
+			for (PDAnnotationWidget widget : ((PDTerminalField)field).getWidgets()) {
+				if (widget.getRectangle() == null) {
+					continue;
+				}
+				Integer widgetPageNo = null;
+				PDPage page = widget.getPage();
+				if (page != null) {
+					widgetPageNo = pageNos.get(page.getCOSObject());
+				}
+				if (widgetPageNo == null) {
+					if (annotationPageNos == null) {
+						annotationPageNos = getAnnotationPageNos(document);
+					}
+					widgetPageNo = annotationPageNos.get(widget.getCOSObject());
+				}
+				if (widgetPageNo == null) {
+					continue;	// widget is not on any page
+				}
+				List<FormWidget> widgets = pageWidgets.get(widgetPageNo);
+				if (widgets == null) {
+					widgets = new ArrayList<FormWidget>();
+					pageWidgets.put(widgetPageNo, widgets);
+				}
+				widgets.add(new FormWidget((PDTerminalField)field, widget, valueClass));
+			}
+		}
+	}
+
+	/**
+	 * Read page number of annotations listed in /Annots of the pages.
+	 *
+	 * @param document pdf document.
+	 * @return annotation dictionary -> page number.
+	 */
+	private static Map<COSDictionary, Integer> getAnnotationPageNos(PDDocument document) {
+		Map<COSDictionary, Integer> annotationPageNos = new HashMap<COSDictionary, Integer>();
+		int pageNo = 0;
+		for (PDPage page : document.getPages()) {
+			COSBase annotations = page.getCOSObject().getDictionaryObject(COSName.ANNOTS);
+			if (annotations instanceof COSArray) {
+				COSArray annotationArray = (COSArray)annotations;
+				for (int i = 0; i < annotationArray.size(); i++) {
+					COSBase annotation = annotationArray.getObject(i);
+					if (annotation instanceof COSDictionary) {
+						annotationPageNos.put((COSDictionary)annotation, pageNo);
+					}
+				}
+			}
+			pageNo++;
+		}
+		return annotationPageNos;
+	}
+
+	/**
+	 * Return widgets drawn on the page.
+	 *
+	 * @param pageNo page number (0 origin).
+	 * @return widgets in order of the fields. Empty list if the page has no widget.
+	 */
+	public List<FormWidget> getWidgets(int pageNo) {
+		List<FormWidget> widgets = pageWidgets.get(pageNo);
+		return widgets == null ? Collections.<FormWidget>emptyList() : widgets;
+	}
+
+	/**
+	 * Return class of the value of a form field.
+	 *
+	 * @param field form field.
+	 * @return class of the value. null if field has no value.
+	 */
+	static Class<?> getValueClass(PDTerminalField field) {
+		if (field instanceof PDCheckBox) {
+			return java.lang.Boolean.class;
+		} else if (field instanceof PDListBox && ((PDListBox)field).isMultiSelect()) {
+			return java.util.List.class;	// selected options
+		} else if (field instanceof PDTextField || field instanceof PDRadioButton || field instanceof PDChoice) {
+			return java.lang.String.class;	// text, export value of the selected button or selected option
+		}
+		return null;
+	}
+
+	/**
+	 * Return value of the field when the widget is selected. Used by check boxes and radio buttons.
+	 *
+	 * @param widget widget of the field.
+	 * @return name of the on appearance state. null if widget has no on state.
+	 */
+	private static String readOnValue(PDAnnotationWidget widget) {
+		COSBase appearance = widget.getCOSObject().getDictionaryObject(COSName.AP);
+		if (!(appearance instanceof COSDictionary)) {
+			return null;
+		}
+		COSBase normal = ((COSDictionary)appearance).getDictionaryObject(COSName.N);
+		if (!(normal instanceof COSDictionary) || normal instanceof COSStream) {
+			return null;	// single appearance without states
+		}
+		for (COSName state : ((COSDictionary)normal).keySet()) {
+			if (!COSName.Off.equals(state)) {
+				return state.getName();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Attributes of a widget and the field it belongs to. Attributes are copied from the field so that the index
+	 * does not keep the document loaded.
+	 */
+	public static class FormWidget {
+		private final String fieldName;
+		private final Class<?> valueClass;
+		private final PDRectangle rectangle;
+		private final int quadding;
+		private final boolean checkBox;
+		private final boolean radioButton;
+		private final String onValue;
+
+		FormWidget(PDTerminalField field, PDAnnotationWidget widget, Class<?> valueClass) {
+			this.fieldName = field.getFullyQualifiedName();
+			this.valueClass = valueClass;
+			this.rectangle = new PDRectangle(widget.getRectangle().getLowerLeftX(), widget.getRectangle().getLowerLeftY(),
+					widget.getRectangle().getWidth(), widget.getRectangle().getHeight());
+			this.quadding = field instanceof PDVariableText ? ((PDVariableText)field).getQ() : PDVariableText.QUADDING_LEFT;
+			this.checkBox = field instanceof PDCheckBox;
+			this.radioButton = field instanceof PDRadioButton;
+			this.onValue = checkBox || radioButton ? readOnValue(widget) : null;
+		}
+
+		/**
+		 * @return fully qualified name of the field.
+		 */
+		public String getFieldName() {
+			return this.fieldName;
+		}
+
+		/**
+		 * @return class of the value of the field.
+		 */
+		public Class<?> getValueClass() {
+			return this.valueClass;
+		}
+		public PDRectangle getRectangle() {
+			return this.rectangle;
+		}
+
+		/**
+		 * @return alignment of text. One of PDVariableText.QUADDING_*
+		 */
+		public int getQuadding() {
+			return this.quadding;
+		}
+		public boolean isCheckBox() {
+			return this.checkBox;
+		}
+		public boolean isRadioButton() {
+			return this.radioButton;
+		}
+
+		/**
+		 * @return value of the field when this widget is selected. null if widget has no on state.
+		 */
+		public String getOnValue() {
+			return this.onValue;
+		}
+	}
+}
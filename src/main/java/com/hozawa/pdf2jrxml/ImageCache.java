@@ -0,0 +1,401 @@
+package com.hozawa.pdf2jrxml;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Cache of images saved to the image directory. Images are identified by a hash of the raw image stream and the entries
+ * that change its colors, so an image that appears on many pages or in many pdf files is decoded and saved only once.
+ * Saved images are recorded in an index file in the image directory and are reused by later runs.
+ * Images are saved in background by ImageEncoder. Each conversion waits only for the images drawn on its own pages,
+ * through the future of the image file. An image that could not be saved is removed from the cache so that it is saved
+ * again when next requested. Jpeg images that need no conversion are saved with their original encoded data instead of
+ * being decoded and encoded as png. Jpeg 2000 images are encoded as png because JasperReports cannot read them.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class ImageCache {
+	private static final String INDEX_FILENAME = "images.idx";
+	private static final String HASH_ALGORITHM = "SHA-1";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final COSName[] IMAGE_KEYS = {COSName.COLORSPACE, COSName.DECODE, COSName.MASK, COSName.IMAGE_MASK};	// entries that change how raw data is drawn
+	private static final int MAX_DIGEST_DEPTH = 8;	// maximum depth of nested objects added to the hash
+
+	private final File imgDir;
+	private final File indexFile;
+	private final ImageEncoder imageEncoder;
+	private static final Future<Void> SAVED = CompletableFuture.completedFuture(null);	// future of an image already saved
+
+	private final Map<String, FutureTask<ImageFile>> imageFiles = new ConcurrentHashMap<String, FutureTask<ImageFile>>();	// hash -> image file
+
+	/**
+	 * Constructor. Images are saved in the calling thread.
+	 *
+	 * @param imgDir directory to save images.
+	 */
+	public ImageCache(String imgDir) {
+		this(imgDir, null);
+	}
+
+	/**
+	 * Constructor. Load images already saved in the image directory from the index file.
+	 *
+	 * @param imgDir directory to save images.
+	 * @param imageEncoder pool of threads to save images. null to save images in the calling thread.
+	 */
+	public ImageCache(String imgDir, ImageEncoder imageEncoder) {
+		this.imgDir = new File(imgDir);
+		this.imageEncoder = imageEncoder;
+		this.indexFile = new File(this.imgDir, INDEX_FILENAME);
+		loadIndex();
+	}
+
+	/**
+	 * Return file containing the image. Image is saved if it is not in the cache.
+	 * When saved in background, wait for the future of the returned file before using the file.
+	 *
+	 * @param image image in pdf.
+	 * @return image file.
+	 * @throws IOException when image could not be read or saved.
+	 */
+	public ImageFile getImageFile(final PDImageXObject image) throws IOException {
+		final String hash = hash(image);
+		FutureTask<ImageFile> imageFile = imageFiles.get(hash);
+		if (imageFile == null) {
+			FutureTask<ImageFile> newImageFile = new FutureTask<ImageFile>(new Callable<ImageFile>() {
+				@Override
+				public ImageFile call() throws IOException {
+					return saveImage(image, hash);
+				}
+			});
+			imageFile = imageFiles.putIfAbsent(hash, newImageFile);
+			if (imageFile == null) {
+				imageFile = newImageFile;
+				imageFile.run();	// image is decoded outside of the map so that other images are not blocked
+			}
+		}
+		try {
+			return imageFile.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while saving image", e);
+		} catch (ExecutionException e) {
+			imageFiles.remove(hash, imageFile);	// save again when next requested
+			throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Return image file already saved by an earlier run.
+	 */
+	private static FutureTask<ImageFile> savedImageFile(final String filename) {
+		FutureTask<ImageFile> future = new FutureTask<ImageFile>(new Callable<ImageFile>() {
+			@Override
+			public ImageFile call() {
+				return new ImageFile(filename, SAVED);
+			}
+		});
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Start saving image in background. Image data is read in calling thread because pdf document is not thread-safe.
+	 * @param image image to save.
+	 * @param hash hash of the image.
+	 * @return file to be saved.
+	 * @throws IOException
+	 */
+	private ImageFile saveImage(PDImageXObject image, final String hash) throws IOException {
+		if (!imgDir.exists()) {
+			imgDir.mkdirs();
+		}
+		String suffix = getPassthroughSuffix(image);
+		final String filename = hash + "." + (suffix != null ? suffix : "png");
+		final File file = new File(imgDir, filename);
+		final byte[] data;
+		final BufferedImage bufferedImage;
+		if (suffix != null) {
+			try (InputStream in = image.getCOSObject().createRawInputStream()) {
+				data = IOUtils.toByteArray(in);
+			}
+			bufferedImage = null;
+		} else {
+			data = null;
+			bufferedImage = image.getImage();
+		}
+		if (imageEncoder == null) {
+			writeImage(hash, file, data, bufferedImage);
+			return new ImageFile(filename, SAVED);
+		}
+		return new ImageFile(filename, imageEncoder.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				writeImage(hash, file, data, bufferedImage);
+				return null;
+			}
+		}));
+	}
+
+	/**
+	 * Write image file and add it to the index file. Image that could not be saved is removed from the cache so that
+	 * it is saved again when next requested.
+	 *
+	 * @param hash hash of the image.
+	 * @param file file to save.
+	 * @param data encoded image data to save as is. null to save bufferedImage as png.
+	 * @param bufferedImage decoded image.
+	 * @throws IOException
+	 */
+	private void writeImage(String hash, File file, byte[] data, BufferedImage bufferedImage) throws IOException {
+		try {
+			if (data != null) {
+				ImageEncoder.saveBytes(data, file);
+			} else {
+				ImageEncoder.savePng(bufferedImage, file);
+			}
+		} catch (IOException | RuntimeException e) {
+			imageFiles.remove(hash);
+			throw e;
+		}
+		addToIndex(hash, file.getName());
+	}
+
+	/**
+	 * Return file suffix if the image stream can be saved as is.
+	 * Stream must only be compressed with DCTDecode (jpeg) and have no mask or decode array.
+	 * Jpeg must be in gray or rgb color space because cmyk jpeg is not displayed correctly by most viewers.
+	 * Jpeg 2000 (JPXDecode) is not passed through because ImageIO used by JasperReports has no reader for it.
+	 *
+	 * @param image image in pdf.
+	 * @return "jpg" or null if image must be converted to png.
+	 * @throws IOException
+	 */
+	private String getPassthroughSuffix(PDImageXObject image) throws IOException {
+		List<COSName> filters = image.getStream().getFilters();
+		if (filters == null || filters.size() != 1) {
+			return null;
+		}
+		COSDictionary dictionary = image.getCOSObject();
+		if (dictionary.containsKey(COSName.SMASK) || dictionary.containsKey(COSName.MASK)
+				|| dictionary.containsKey(COSName.DECODE)) {
+			return null;
+		}
+		if (COSName.DCT_DECODE.equals(filters.get(0))) {
+			PDColorSpace colorSpace = image.getColorSpace();
+			if (colorSpace instanceof PDDeviceRGB || colorSpace instanceof PDDeviceGray) {
+				return "jpg";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Compute hash of the image from its raw stream, dimensions, color space, decode array, masks and soft mask.
+	 * Images with the same data but a different palette or decode array are drawn with different colors.
+	 *
+	 * @param image image to hash.
+	 * @return hex string of hash.
+	 * @throws IOException
+	 */
+	private String hash(PDImageXObject image) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		updateDigest(digest, image);
+		PDImageXObject softMask = image.getSoftMask();
+		if (softMask != null) {
+			updateDigest(digest, softMask);
+		}
+		byte[] bytes = digest.digest();
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	private void updateDigest(MessageDigest digest, PDImageXObject image) throws IOException {
+		digest.update(intToBytes(image.getWidth()));
+		digest.update(intToBytes(image.getHeight()));
+		digest.update(intToBytes(image.getBitsPerComponent()));
+		byte[] buffer = new byte[8192];
+		try (InputStream in = image.getCOSObject().createRawInputStream()) {
+			int len;
+			while ((len = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, len);
+			}
+		}
+		COSDictionary dictionary = image.getCOSObject();
+		for (COSName key : IMAGE_KEYS) {
+			digest.update(key.getName().getBytes(StandardCharsets.ISO_8859_1));
+			updateDigest(digest, dictionary.getDictionaryObject(key), 0);
+		}
+	}
+
+	/**
+	 * Add a pdf object to the hash. Streams (e.g. palette lookup, icc profile, stencil mask) are added with their raw data.
+	 */
+	private void updateDigest(MessageDigest digest, COSBase value, int depth) throws IOException {
+		if (value instanceof COSObject) {
+			value = ((COSObject)value).getObject();
+		}
+		if (depth > MAX_DIGEST_DEPTH) {
+			digest.update((byte)'?');
+		} else if (value == null) {
+			digest.update((byte)'N');
+		} else if (value instanceof COSName) {
+			digest.update((byte)'/');
+			digest.update(((COSName)value).getName().getBytes(StandardCharsets.ISO_8859_1));
+		} else if (value instanceof COSNumber) {
+			digest.update((byte)'#');
+			digest.update(intToBytes(Float.floatToIntBits(((COSNumber)value).floatValue())));
+		} else if (value instanceof COSBoolean) {
+			digest.update((byte)(((COSBoolean)value).getValue() ? 'T' : 'F'));
+		} else if (value instanceof COSString) {
+			byte[] bytes = ((COSString)value).getBytes();
+			digest.update((byte)'(');
+			digest.update(intToBytes(bytes.length));
+			digest.update(bytes);
+		} else if (value instanceof COSArray) {
+			COSArray array = (COSArray)value;
+			digest.update((byte)'[');
+			digest.update(intToBytes(array.size()));
+			for (int i = 0; i < array.size(); i++) {
+				updateDigest(digest, array.get(i), depth + 1);
+			}
+		} else if (value instanceof COSStream) {
+			digest.update((byte)'S');
+			byte[] buffer = new byte[8192];
+			try (InputStream in = ((COSStream)value).createRawInputStream()) {
+				int len;
+				while ((len = in.read(buffer)) > 0) {
+					digest.update(buffer, 0, len);
+				}
+			}
+			updateDigest(digest, ((COSStream)value).getDictionaryObject(COSName.FILTER), depth + 1);
+		} else if (value instanceof COSDictionary) {
+			COSDictionary dictionary = (COSDictionary)value;
+			List<COSName> keys = new ArrayList<COSName>(dictionary.keySet());
+			Collections.sort(keys);
+			digest.update((byte)'<');
+			for (COSName key : keys) {
+				digest.update(key.getName().getBytes(StandardCharsets.ISO_8859_1));
+				updateDigest(digest, dictionary.getItem(key), depth + 1);
+			}
+		}
+	}
+
+	private static byte[] intToBytes(int value) {
+		return new byte[] { (byte)(value >> 24), (byte)(value >> 16), (byte)(value >> 8), (byte)value };
+	}
+
+	/**
+	 * Load index file. Entries whose image file no longer exists are ignored.
+	 */
+	private void loadIndex() {
+		if (!indexFile.exists()) {
+			return;
+		}
+		Properties index = new Properties();
+		try (InputStream is = new BufferedInputStream(new FileInputStream(indexFile))) {
+			index.load(is);
+		} catch (IOException e) {
+			System.out.println("image index file could not be read. Images will be saved again.");
+			return;
+		}
+		for (String hash : index.stringPropertyNames()) {
+			String filename = index.getProperty(hash);
+			if (new File(imgDir, filename).exists()) {
+				imageFiles.put(hash, savedImageFile(filename));
+			}
+		}
+	}
+
+	/**
+	 * Append an entry to the index file.
+	 *
+	 * @param hash hash of the image.
+	 * @param filename name of the image file.
+	 * @throws IOException
+	 */
+	private synchronized void addToIndex(String hash, String filename) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile, true), StandardCharsets.ISO_8859_1)) {
+			writer.write(hash + "=" + filename + "\n");
+		}
+	}
+
+	/**
+	 * @return number of distinct images in the cache.
+	 */
+	public int size() {
+		return imageFiles.size();
+	}
+
+	/**
+	 * File an image is saved to.
+	 */
+	public static class ImageFile {
+		private final String filename;
+		private final Future<Void> saved;
+
+		ImageFile(String filename, Future<Void> saved) {
+			this.filename = filename;
+			this.saved = saved;
+		}
+
+		/**
+		 * @return name of image file relative to the image directory.
+		 */
+		public String getFilename() {
+			return this.filename;
+		}
+
+		/**
+		 * @return future to wait for the file to be saved. Fails when the image could not be saved.
+		 */
+		public Future<Void> getSaved() {
+			return this.saved;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.hozawa.pdf2jrxml;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Pool of background threads to encode and save images so page content is not blocked by png compression.
+ * Number of waiting images is bounded. When the queue is full, the image is saved by the calling thread.
+ * In virtual thread mode, each image is saved on its own virtual thread instead, and the number of images being saved
+ * is bounded by the number of threads. The calling thread waits while the bound is reached, so decoded images
+ * waiting to be saved do not pile up in heap.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class ImageEncoder {
+	private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+	private final ExecutorService executor;
+	private final Semaphore permits;	// images being saved on virtual threads. null with a pool of threads
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numThreads number of threads to encode images.
+	 */
+	public ImageEncoder(int numThreads) {
+		this(numThreads, false);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numThreads number of threads to encode images. With virtual threads, number of images saved at the same time.
+	 * @param virtualThreads true to save each image on a virtual thread.
+	 */
+	public ImageEncoder(int numThreads, boolean virtualThreads) {
+		if (virtualThreads) {
+			executor = TaskExecutors.newVirtualThreadExecutor("pdf2jrxml-image");
+			permits = new Semaphore(Math.max(1, numThreads));
+			return;
+		}
+		permits = null;
+		final AtomicInteger threadNo = new AtomicInteger();
+		ThreadPoolExecutor threadPool = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(numThreads * QUEUE_SIZE_PER_THREAD),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "pdf2jrxml-image-" + threadNo.incrementAndGet());
+						thread.setDaemon(true);	// encoder is never shut down. do not keep jvm running
+						return thread;
+					}
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		threadPool.allowCoreThreadTimeOut(true);
+		executor = threadPool;
+	}
+
+	/**
+	 * Run task to save an image in background.
+	 *
+	 * @param task task to save an image.
+	 * @return future to wait for image to be saved.
+	 */
+	Future<Void> submit(final Callable<Void> task) {
+		if (permits == null) {
+			return executor.submit(task);
+		}
+		permits.acquireUninterruptibly();
+		try {
+			return executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					try {
+						return task.call();
+					} finally {
+						permits.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			permits.release();	// task was rejected
+			throw e;
+		}
+	}
+
+	/**
+	 * Encode image as png and save it in calling thread.
+	 *
+	 * @param image decoded image.
+	 * @param file file to save.
+	 * @throws IOException
+	 */
+	public static void savePng(BufferedImage image, File file) throws IOException {
+		if (!ImageIO.write(image, "png", file)) {
+			throw new IOException("no png writer found to save " + file);
+		}
+	}
+
+	/**
+	 * Save encoded image data in calling thread.
+	 *
+	 * @param data encoded image data.
+	 * @param file file to save.
+	 * @throws IOException
+	 */
+	public static void saveBytes(byte[] data, File file) throws IOException {
+		try (OutputStream os = new FileOutputStream(file)) {
+			os.write(data);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.concurrent.Future;
+
+/**
+ * Image drawn in pdf page. Position and size are in pdf user space with origin at the bottom left of the page.
+ * 
+ * @author Hitoshi Ozawa
+ */
+public class ImagePlacement {
+	private final String imageFilename;
+	private final Future<Void> saved;
+	private final float x;
+	private final float y;
+	private final float width;
+	private final float height;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param imageFilename name of file image was saved to.
+	 * @param saved future to wait for the image file to be saved.
+	 * @param x x of bottom left corner of the image.
+	 * @param y y of bottom left corner of the image.
+	 * @param width width the image is drawn at.
+	 * @param height height the image is drawn at.
+	 */
+	public ImagePlacement(String imageFilename, Future<Void> saved, float x, float y, float width, float height) {
+		this.imageFilename = imageFilename;
+		this.saved = saved;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+	
+	public String getImageFilename() {
+		return this.imageFilename;
+	}
+	public Future<Void> getSaved() {
+		return this.saved;
+	}
+	public float getX() {
+		return this.x;
+	}
+	public float getY() {
+		return this.y;
+	}
+	public float getWidth() {
+		return this.width;
+	}
+	public float getHeight() {
+		return this.height;
+	}
+}
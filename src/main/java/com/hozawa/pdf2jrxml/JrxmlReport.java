@@ -1,31 +1,41 @@
 package com.hozawa.pdf2jrxml;
 
 import java.awt.Color;
-import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
 
-import org.apache.pdfbox.cos.COSArray;
-import org.apache.pdfbox.cos.COSDictionary;
-import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
 import org.apache.pdfbox.pdmodel.PDDocumentInformation;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
-import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
-import org.apache.pdfbox.pdmodel.interactive.form.PDField;
-import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.form.PDVariableText;
 import org.apache.pdfbox.text.PDFTextStripper;
 
-import org.apache.pdfbox.cos.COSNumber;
-
 import net.sf.jasperreports.engine.JRException;
-import net.sf.jasperreports.engine.JRReport;
 import net.sf.jasperreports.engine.JasperCompileManager;
 import net.sf.jasperreports.engine.design.JRDesignBand;
 import net.sf.jasperreports.engine.design.JRDesignElement;
@@ -35,7 +45,10 @@ import net.sf.jasperreports.engine.design.JRDesignImage;
 import net.sf.jasperreports.engine.design.JRDesignLine;
 import net.sf.jasperreports.engine.design.JRDesignRectangle;
 import net.sf.jasperreports.engine.design.JRDesignStaticText;
+import net.sf.jasperreports.engine.design.JRDesignStyle;
 import net.sf.jasperreports.engine.design.JRDesignTextField;
+import net.sf.jasperreports.engine.design.JRValidationException;
+import net.sf.jasperreports.engine.design.JRValidationFault;
 import net.sf.jasperreports.engine.design.JasperDesign;
 import net.sf.jasperreports.engine.type.FillEnum;
 import net.sf.jasperreports.engine.type.HorizontalImageAlignEnum;
@@ -52,6 +65,182 @@ import net.sf.jasperreports.engine.xml.JRXmlWriter;
  * @since  2019/05/10
  */
 public class JrxmlReport {
+	private static final String JASPER_EXTENSION = ".jasper";
+	
+	private int pageThreads = 0;	// number of threads to process pages. 0 to use threads in configuration
+	private final Map<String, ImageCache> imageCaches = new ConcurrentHashMap<String, ImageCache>();	// image directory -> saved images
+	private volatile ImageEncoder imageEncoder;	// threads to save images. created on first use
+	private volatile ExecutorService parseExecutor;	// threads to parse pages of all documents in virtual thread mode. created on first use
+	private final Map<String, PageCache> pageCaches = new ConcurrentHashMap<String, PageCache>();	// cache directory -> cached pages
+	private volatile LayoutCache layoutCache;	// jrxml of page layouts. created on first use
+	private volatile ReportCompiler reportCompiler;	// threads to compile jrxml into jasper files. created on first use
+	private final ConversionStats stats = new ConversionStats();	// metrics of all conversions by this instance
+	private final Map<PDDocument, FormIndex> formIndexes = Collections.synchronizedMap(new WeakHashMap<PDDocument, FormIndex>());	// form widgets of loaded documents
+	private final PageHasher pageHasher = new PageHasher();	// content keys of pages for page and layout caches
+	private final ThreadLocal<PDFContentEngine> contentEngines = new ThreadLocal<PDFContentEngine>();	// engine of each page thread
+	
+	/**
+	 * Set number of threads to process pages in a pdf file.
+	 * 
+	 * @param pageThreads number of threads. 0 to use threads property in configuration.
+	 */
+	public void setPageThreads(int pageThreads) {
+		this.pageThreads = pageThreads;
+	}
+
+	/**
+	 * Return metrics of conversions done by this instance.
+	 * 
+	 * @return conversion metrics.
+	 */
+	public ConversionStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Return cache of images saved in the image directory. Cache is shared by all pages and files converted by this instance.
+	 * 
+	 * @param config configuration properties
+	 * @return cache of images.
+	 */
+	private ImageCache getImageCache(final Config config) {
+		String imgDir = config.getImgDir();
+		ImageCache imageCache = imageCaches.get(imgDir);
+		if (imageCache == null) {
+			// index file of the directory is loaded only once
+			imageCache = imageCaches.computeIfAbsent(imgDir, new Function<String, ImageCache>() {
+				@Override
+				public ImageCache apply(String dir) {
+					return new ImageCache(dir, getImageEncoder(config));
+				}
+			});
+		}
+		return imageCache;
+	}
+	
+	/**
+	 * Return cache of generated pages in the page cache directory.
+	 * 
+	 * @param config configuration properties
+	 * @return cache of pages. null if page cache is not used.
+	 */
+	private PageCache getPageCache(Config config) {
+		String cacheDir = config.getPageCacheDir();
+		if (cacheDir == null) {
+			return null;
+		}
+		PageCache pageCache = pageCaches.get(cacheDir);
+		if (pageCache == null) {
+			pageCache = pageCaches.computeIfAbsent(cacheDir, new Function<String, PageCache>() {
+				@Override
+				public PageCache apply(String dir) {
+					return new PageCache(dir);
+				}
+			});
+		}
+		return pageCache;
+	}
+	
+	/**
+	 * Return cache of page layouts.
+	 * 
+	 * @param config configuration properties
+	 * @return cache of layouts. null if layout cache is not used.
+	 */
+	private synchronized LayoutCache getLayoutCache(Config config) {
+		if (config.getLayoutCacheSize() < 1) {
+			return null;
+		}
+		if (layoutCache == null) {
+			layoutCache = new LayoutCache(config.getLayoutCacheSize());
+		}
+		return layoutCache;
+	}
+	
+	/**
+	 * Return content engine of the current thread. Engine is created on first use and reused for later pages.
+	 * 
+	 * @return content engine.
+	 * @throws IOException
+	 */
+	private PDFContentEngine getContentEngine() throws IOException {
+		PDFContentEngine contentEngine = contentEngines.get();
+		if (contentEngine == null) {
+			contentEngine = new PDFContentEngine();
+			contentEngines.set(contentEngine);
+		}
+		return contentEngine;
+	}
+	
+	/**
+	 * Release fonts and document kept by the content engine of this thread. Called after the pages of a document
+	 * have been extracted so that the engine does not keep the closed document.
+	 */
+	void releaseContentEngine() {
+		PDFContentEngine contentEngine = contentEngines.get();
+		if (contentEngine != null) {
+			contentEngine.release();
+		}
+	}
+	
+	/**
+	 * Return pool of threads to compile jrxml files. Created on first use.
+	 * 
+	 * @param config configuration properties
+	 * @return report compiler.
+	 */
+	private synchronized ReportCompiler getReportCompiler(Config config) {
+		if (reportCompiler == null) {
+			reportCompiler = new ReportCompiler(config.getJasperCacheDir(), config.getCompileThreads(), stats);
+		}
+		return reportCompiler;
+	}
+	
+	/**
+	 * Return pool of threads to parse and extract pages in virtual thread mode. Pool has one thread for each
+	 * carrier thread and is shared by all documents, so documents on virtual threads do not start their own pools.
+	 * 
+	 * @return executor.
+	 */
+	synchronized ExecutorService getParseExecutor() {
+		if (parseExecutor == null) {
+			parseExecutor = TaskExecutors.newFixedThreadPool("pdf2jrxml-parse", TaskExecutors.getCarrierThreads());
+		}
+		return parseExecutor;
+	}
+	
+	private synchronized ImageEncoder getImageEncoder(Config config) {
+		if (imageEncoder == null) {
+			imageEncoder = new ImageEncoder(config.getImageThreads(), config.isVirtualThreads());
+		}
+		return imageEncoder;
+	}
+	
+	/**
+	 * Wait for images drawn in a page to be saved in the image directory.
+	 * Images of other pages and other conversions sharing the image directory are not waited for.
+	 * 
+	 * @param page page extracted from pdf.
+	 * @throws JRException when image could not be saved.
+	 */
+	void awaitImages(Page page) throws JRException {
+		if (page.getPendingImages().isEmpty()) {
+			return;
+		}
+		ConversionStats.Timer timer = stats.start(ConversionStats.Stage.IMAGE_SAVE);
+		try {
+			for (Future<Void> saved : page.getPendingImages()) {
+				saved.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JRException("interrupted while saving images", e);
+		} catch (ExecutionException e) {
+			throw new JRException(e.getCause());
+		} finally {
+			timer.stop();
+		}
+	}
 
 	/**
 	 * Constructor to generate jrxml file from pdf file.
@@ -59,10 +248,11 @@ public class JrxmlReport {
 	 * @param config configuration properties
 	 * @param pdf_filename path to pdf file to read.
 	 * @param jrxml_filename path to jrxml file to generate.
+	 * @return true if jrxml file was generated. false if pdf file could not be read.
 	 * @throws JRException JasperReports exception when generating jrxml file.
 	 */
-	public void generateJrxml(Config config, String pdf_filename, String jrxml_filename) throws JRException {
-		generateJrxml(config, pdf_filename, jrxml_filename, 0);
+	public boolean generateJrxml(Config config, String pdf_filename, String jrxml_filename) throws JRException {
+		return generateJrxml(config, pdf_filename, jrxml_filename, 0);
 	}
 	
 	/**
@@ -72,17 +262,368 @@ public class JrxmlReport {
 	 * @param pdf_filename path to pdf file to read.
 	 * @param jrxml_filename path to jrxml file to generate.
 	 * @param pageNo page number of pdf file to read.
+	 * @return true if jrxml file was generated. false if page could not be read from pdf file.
 	 * @throws JRException JasperReports exception when generating jrxml file.
 	 */
-	public void generateJrxml(Config config, String pdf_filename, String jrxml_filename, int pageNo) throws JRException {
+	public boolean generateJrxml(Config config, String pdf_filename, String jrxml_filename, int pageNo) throws JRException {
 		Page page = extractElementsInPage(config, pdf_filename, pageNo);
-		if (page != null) {
-			JasperDesign design = generateDesign(config, page);
-			JRReport report = JasperCompileManager.compileReport(design);
-			JRXmlWriter.writeReport(report, jrxml_filename, config.getEncoding());	// (JRReport report, java.lang.String destFileName, java.lang.String encoding) 
+		if (page == null) {
+			return false;
+		}
+		awaitImages(page);
+		Future<Void> report = writeJrxml(config, page, jrxml_filename);
+		awaitReports(Arrays.asList(report));
+		stats.addFile();
+		return true;
+	}
+	
+	/**
+	 * Generate a jrxml file for every page in the pdf file.
+	 * Pdf file is read once and pages are processed in parallel. Generated jrxml file names are suffixed with the page number
+	 * (e.g. sample.jrxml -> sample_1.jrxml, sample_2.jrxml, ...).
+	 * 
+	 * @param config configuration properties
+	 * @param pdf_filename path to pdf file to read.
+	 * @param jrxml_filename path to jrxml file to generate. 
+	 * @return number of jrxml files generated.
+	 * @throws JRException JasperReports exception when generating jrxml file.
+	 */
+	public int generateJrxmlAllPages(Config config, String pdf_filename, String jrxml_filename) throws JRException {
+		return generateJrxmlPages(config, pdf_filename, jrxml_filename, null, null, null, 0);
+	}
+	
+	/**
+	 * Generate a jrxml file for each specified page in the pdf file.
+	 * Pdf file is read once and pages are processed in parallel. Generated jrxml file names are suffixed with the page number.
+	 * 
+	 * @param config configuration properties
+	 * @param pdf_filename path to pdf file to read.
+	 * @param jrxml_filename path to jrxml file to generate.
+	 * @param pageNos page numbers (0 origin) of pdf file to read. null to read all pages.
+	 * @return number of jrxml files generated.
+	 * @throws JRException JasperReports exception when generating jrxml file.
+	 */
+	public int generateJrxmlPages(Config config, String pdf_filename, String jrxml_filename, List<Integer> pageNos) throws JRException {
+		return generateJrxmlPages(config, pdf_filename, jrxml_filename, null, pageNos, null, 0);
+	}
+	
+	/**
+	 * Generate a jrxml file for each page in the page range of the pdf file.
+	 * Only the selected pages are read, in ascending order, and a jrxml file is written as soon as its page and the pages
+	 * before it have been read. Generated jrxml file names are suffixed with the page number.
+	 * 
+	 * @param config configuration properties
+	 * @param pdf_filename path to pdf file to read.
+	 * @param jrxml_filename path to jrxml file to generate.
+	 * @param pageRange pages to read.
+	 * @return number of jrxml files generated.
+	 * @throws JRException JasperReports exception when generating jrxml file.
+	 */
+	public int generateJrxmlPages(Config config, String pdf_filename, String jrxml_filename, PageRange pageRange) throws JRException {
+		return generateJrxmlPages(config, pdf_filename, jrxml_filename, pageRange, null, null, 0);
+	}
+	
+	/**
+	 * Generate a jrxml file for each page in the page range of the pdf file, extracting pages on the threads of the caller.
+	 * 
+	 * @param config configuration properties
+	 * @param pdf_filename path to pdf file to read.
+	 * @param jrxml_filename path to jrxml file to generate. Page number is added to the file name.
+	 * @param pageRange pages to read. null to read all pages.
+	 * @param executor threads to extract pages on. Shared with other conversions of the caller.
+	 * @param maxWorkers maximum number of threads of the executor used by this file. 0 to use the number of threads.
+	 * @return number of jrxml files generated.
+	 * @throws JRException JasperReports exception when generating jrxml file.
+	 */
+	int generateJrxmlPages(Config config, String pdf_filename, String jrxml_filename, PageRange pageRange,
+			ExecutorService executor, int maxWorkers) throws JRException {
+		return generateJrxmlPages(config, pdf_filename, jrxml_filename, pageRange, null, executor, maxWorkers);
+	}
+	
+	/**
+	 * Generate a jrxml file for each selected page in the pdf file. Pages are selected by pageRange or by pageNos.
+	 * Number of pages in the pdf file is taken from the first loaded document, so the file is not parsed only to count pages.
+	 * 
+	 * @param config configuration properties
+	 * @param pdf_filename path to pdf file to read.
+	 * @param jrxml_filename path to jrxml file to generate. Page number is added to the file name.
+	 * @param pageRange pages to read. null to read pageNos.
+	 * @param pageNos page numbers (0 origin) of pdf file to read. null to read all pages when pageRange is also null.
+	 * @param executor threads to extract pages on. null to use a pool for this file.
+	 * @param maxWorkers maximum number of threads used by this file. 0 to use the number of threads.
+	 * @return number of jrxml files generated.
+	 * @throws JRException JasperReports exception when generating jrxml file.
+	 */
+	private int generateJrxmlPages(final Config config, String pdf_filename, final String jrxml_filename, PageRange pageRange,
+			List<Integer> pageNos, ExecutorService executor, int maxWorkers) throws JRException {
+		PdfSource source;
+		PDDocument firstDocument;
+		try {
+			source = new PdfSource(config, new File(pdf_filename));
+			firstDocument = loadDocument(source);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 0;
+		}
+		if (pageNos == null) {
+			pageNos = getPageNos(pageRange, firstDocument.getNumberOfPages());
+		}
+		
+		final AtomicInteger numGenerated = new AtomicInteger();
+		final List<Future<Void>> reports = new ArrayList<Future<Void>>();
+		try {
+			extractElementsInPages(config, source, firstDocument, pageNos, executor, maxWorkers, new PageConsumer() {
+				@Override
+				public void accept(Page page) throws JRException {
+					awaitImages(page);
+					reports.add(writeJrxml(config, page, getPageFilename(jrxml_filename, page.getPageNo())));
+					numGenerated.incrementAndGet();
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JRException("interrupted while reading pages", e);
+		}
+		awaitReports(reports);
+		if (numGenerated.get() > 0) {
+			stats.addFile();
+		}
+		return numGenerated.get();
+	}
+	
+	/**
+	 * Return selected pages of a document.
+	 * 
+	 * @param pageRange pages to select. null to select all pages.
+	 * @param numPages number of pages in the document.
+	 * @return page numbers (0 origin) in ascending order.
+	 */
+	static List<Integer> getPageNos(PageRange pageRange, int numPages) {
+		if (pageRange != null) {
+			return pageRange.getPageNos(numPages);
+		}
+		List<Integer> pageNos = new ArrayList<Integer>(numPages);
+		for (int i = 0; i < numPages; i++) {
+			pageNos.add(i);
+		}
+		return pageNos;
+	}
+	
+	/**
+	 * Generate jrxml file from information extracted from a pdf page and compile it when jasper output is selected.
+	 * Jrxml file is compiled in background. With jasper only output, jrxml file is removed after it is read.
+	 * 
+	 * @param config configuration properties
+	 * @param page information extracted from pdf page.
+	 * @param jrxml_filename path to jrxml file to generate.
+	 * @return future to wait for jasper file to be saved. null if jasper file is not generated.
+	 * @throws JRException JasperReports exception when generating jrxml file.
+	 */
+	private Future<Void> writeJrxml(Config config, Page page, String jrxml_filename) throws JRException {
+		return writeJrxml(config, page, buildDesign(config, page), jrxml_filename);
+	}
+	
+	/**
+	 * Write report design built from a pdf page to a jrxml file and compile it when jasper output is selected.
+	 * 
+	 * @param config configuration properties
+	 * @param page information extracted from pdf page.
+	 * @param design design built by buildDesign(). null if the page is written from a cache.
+	 * @param jrxml_filename path to jrxml file to generate.
+	 * @return future to wait for jasper file to be saved. null if jasper file is not generated.
+	 * @throws JRException JasperReports exception when generating jrxml file.
+	 */
+	Future<Void> writeJrxml(Config config, Page page, JasperDesign design, String jrxml_filename) throws JRException {
+		writeJrxmlFile(config, page, design, jrxml_filename);
+		if (!config.isJasperOutput()) {
+			return null;
+		}
+		try {
+			Path jrxmlPath = new File(jrxml_filename).toPath();
+			byte[] jrxml = Files.readAllBytes(jrxmlPath);
+			if (!config.isJrxmlOutput()) {
+				Files.delete(jrxmlPath);
+			}
+			return getReportCompiler(config).compile(jrxml, new File(getJasperFilename(jrxml_filename)));
+		} catch (IOException e) {
+			throw new JRException(e);
+		}
+	}
+	
+	/**
+	 * Wait for jasper files to be saved.
+	 * 
+	 * @param reports futures of jasper files. null elements are ignored.
+	 * @throws JRException when jrxml could not be compiled.
+	 */
+	void awaitReports(List<Future<Void>> reports) throws JRException {
+		JRException error = null;
+		for (Future<Void> report : reports) {
+			if (report == null) {
+				continue;
+			}
+			try {
+				report.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new JRException(e);
+			} catch (ExecutionException e) {
+				if (error == null) {	// wait for other reports before reporting the first error
+					error = e.getCause() instanceof JRException ? (JRException)e.getCause() : new JRException(e.getCause());
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+	
+	/**
+	 * Replace extension of jrxml file name with .jasper (e.g. sample_1.jrxml -> sample_1.jasper).
+	 * 
+	 * @param jrxml_filename jrxml file name.
+	 * @return jasper file name.
+	 */
+	private String getJasperFilename(String jrxml_filename) {
+		int extPos = jrxml_filename.lastIndexOf('.');
+		if (extPos <= jrxml_filename.lastIndexOf(File.separatorChar)) {
+			return jrxml_filename + JASPER_EXTENSION;
+		}
+		return jrxml_filename.substring(0, extPos) + JASPER_EXTENSION;
+	}
+	
+	/**
+	 * Build report design from information extracted from a pdf page. Design is verified when validate is set.
+	 * 
+	 * @param config configuration properties
+	 * @param page information extracted from pdf page.
+	 * @return report design. null if the page is written from the page cache or the layout cache.
+	 * @throws JRException when design has errors.
+	 */
+	JasperDesign buildDesign(Config config, Page page) throws JRException {
+		if (page.getCachedJrxml() != null || page.getLayoutJrxml() != null) {
+			return null;
+		}
+		ConversionStats.Timer timer = stats.start(ConversionStats.Stage.DESIGN);
+		JasperDesign design = generateDesign(config, page);
+		timer.stop();
+		if (config.isValidate()) {
+			timer = stats.start(ConversionStats.Stage.VALIDATE);
+			validateDesign(design);
+			timer.stop();
+		}
+		return design;
+	}
+	
+	/**
+	 * Generate jrxml file from information extracted from a pdf page.
+	 * 
+	 * @param config configuration properties
+	 * @param page information extracted from pdf page.
+	 * @param design design built from the page. null if the page is written from a cache.
+	 * @param jrxml_filename path to jrxml file to generate.
+	 * @throws JRException JasperReports exception when generating jrxml file.
+	 */
+	private void writeJrxmlFile(Config config, Page page, JasperDesign design, String jrxml_filename) throws JRException {
+		if (page.getCachedJrxml() != null) {
+			try {
+				Files.copy(page.getCachedJrxml().toPath(), new File(jrxml_filename).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				throw new JRException(e);
+			}
+			stats.addPage();
+			stats.addBytesWritten(new File(jrxml_filename).length());
+			return;
+		}
+		if (page.getLayoutJrxml() != null) {
+			ConversionStats.Timer timer = stats.start(ConversionStats.Stage.WRITE);
+			try {
+				Files.write(new File(jrxml_filename).toPath(), page.getLayoutJrxml());
+			} catch (IOException e) {
+				throw new JRException(e);
+			}
+			timer.stop();
+			stats.addPage();
+			stats.addBytesWritten(page.getLayoutJrxml().length);
+			storePage(config, page, jrxml_filename);
+			return;
+		}
+		ConversionStats.Timer timer = stats.start(ConversionStats.Stage.WRITE);
+		if (config.isStreaming()) {
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(jrxml_filename))) {
+				JrxmlStreamWriter writer = new JrxmlStreamWriter(out, config.getEncoding());
+				writer.writeReport(design);
+				writer.close();
+			} catch (IOException e) {
+				throw new JRException(e);
+			}
+		} else {
+			JRXmlWriter.writeReport(design, jrxml_filename, config.getEncoding());	// (JRReport report, java.lang.String destFileName, java.lang.String encoding) 
+		}
+		timer.stop();
+		stats.addPage();
+		stats.addBytesWritten(new File(jrxml_filename).length());
+		
+		LayoutCache layoutCache = getLayoutCache(config);
+		if (layoutCache != null && page.getLayoutKey() != null) {
+			try {
+				byte[] jrxml = Files.readAllBytes(new File(jrxml_filename).toPath());
+				layoutCache.put(page.getLayoutKey(), page.getContentKey(),
+						new LayoutCache.Layout(jrxml, page.getImageFiles(), page.getPendingImages()));
+			} catch (IOException e) {
+				e.printStackTrace();	// jrxml file is generated. layout will be converted again next time
+			}
+		}
+		storePage(config, page, jrxml_filename);
+	}
+	
+	/**
+	 * Store generated jrxml file in the page cache.
+	 * 
+	 * @param config configuration properties
+	 * @param page page the jrxml file was generated from.
+	 * @param jrxml_filename generated jrxml file.
+	 */
+	private void storePage(Config config, Page page, String jrxml_filename) {
+		PageCache pageCache = getPageCache(config);
+		if (pageCache != null && page.getCacheKey() != null) {
+			try {
+				pageCache.store(page.getCacheKey(), new File(jrxml_filename), page.getImageFiles());
+			} catch (IOException e) {
+				e.printStackTrace();	// jrxml file is generated. page will be converted again next time
+			}
 		}
 	}
 	
+	/**
+	 * Verify generated design. Design is checked without compiling the report expressions.
+	 * 
+	 * @param design design to verify.
+	 * @throws JRValidationException when design has errors.
+	 */
+	private void validateDesign(JasperDesign design) throws JRValidationException {
+		Collection<JRValidationFault> faults = JasperCompileManager.verifyDesign(design);
+		if (faults != null && !faults.isEmpty()) {
+			throw new JRValidationException(faults);
+		}
+	}
+	
+	/**
+	 * Insert page number before the extension of the file name. (e.g. sample.jrxml -> sample_1.jrxml)
+	 * 
+	 * @param filename file name to insert page number.
+	 * @param pageNo page number (0 origin).
+	 * @return file name with page number.
+	 */
+	String getPageFilename(String filename, int pageNo) {
+		String suffix = "_" + (pageNo + 1);
+		int extPos = filename.lastIndexOf('.');
+		if (extPos <= filename.lastIndexOf(File.separatorChar)) {
+			return filename + suffix;
+		}
+		return filename.substring(0, extPos) + suffix + filename.substring(extPos);
+	}
+	
 	/**
 	 * Extract text information from pdf file.
 	 * 
@@ -91,30 +632,296 @@ public class JrxmlReport {
 	 * @param pageNo page number of pdf file to extract information from.
 	 * @return Page information extracted from pdf page.
 	 */
-	private Page extractElementsInPage(Config config, String pdf_filename, int pageNo) {
-		int numPages;	// number of pages in pdf file
+	private Page extractElementsInPage(final Config config, final String pdf_filename, final int pageNo) {
+		if (config.isVirtualThreads()) {
+			// parse in shared pool
+			try {
+				return getParseExecutor().submit(new Callable<Page>() {
+					@Override
+					public Page call() {
+						return readPage(config, pdf_filename, pageNo);
+					}
+				}).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+				return null;
+			}
+		}
+		return readPage(config, pdf_filename, pageNo);
+	}
+	
+	/**
+	 * Load pdf file and extract information from a page in the calling thread.
+	 */
+	private Page readPage(Config config, String pdf_filename, int pageNo) {
+        try (PDDocument document = loadDocument(new PdfSource(config, new File(pdf_filename)))) {
+        	return extractElementsInPage(config, document, pageNo);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+        	releaseContentEngine();
+        }
+	}
+	
+	/**
+	 * Load pdf document and record time taken to parse it.
+	 * 
+	 * @param source pdf file to load.
+	 * @return loaded pdf document.
+	 * @throws IOException when pdf could not be parsed.
+	 */
+	PDDocument loadDocument(PdfSource source) throws IOException {
+		ConversionStats.Timer timer = stats.start(ConversionStats.Stage.LOAD);
+		try {
+			return source.load();
+		} finally {
+			timer.stop();
+		}
+	}
+	
+	/**
+	 * Receives pages extracted by extractElementsInPages in page order.
+	 */
+	interface PageConsumer {
+		/**
+		 * @param page page extracted from pdf. null if the page could not be read.
+		 */
+		void accept(Page page) throws JRException, InterruptedException;
+	}
+	
+	/**
+	 * Extract information from specified pages of a pdf file and pass them to the consumer in the order of pageNos.
+	 * Pages are distributed to worker threads. PDDocument is not thread safe, so each worker parses its own PDDocument
+	 * from the shared PdfSource and reuses it for all pages it processes. The first document is loaded by the caller,
+	 * which gets the number of pages from it, and is used by the first worker. Form index of the first document is shared
+	 * by the documents of all workers. Workers only read ahead of the consumer by a bounded window of pages, so pages
+	 * are extracted lazily and in order, and only the pages in the window are kept in memory.
+	 * Documents are closed before this method returns.
+	 * 
+	 * @param config configuration properties
+	 * @param source content of the pdf file.
+	 * @param firstDocument document loaded from source.
+	 * @param pageNos page numbers (0 origin) of pdf file to extract information from.
+	 * @param executor threads to run workers on. null to use a pool for this file, or the shared parse pool in virtual thread mode.
+	 * @param maxWorkers maximum number of workers, each parsing its own document. 0 to use the number of threads.
+	 * @param consumer receives the extracted pages in the calling thread.
+	 * @throws JRException when the consumer failed. Pages after the failed page are not extracted.
+	 * @throws InterruptedException when interrupted while waiting for pages.
+	 */
+	void extractElementsInPages(final Config config, final PdfSource source, final PDDocument firstDocument,
+			final List<Integer> pageNos, ExecutorService executor, int maxWorkers, PageConsumer consumer) throws JRException, InterruptedException {
+		int numWorkers = Math.min(pageThreads > 0 ? pageThreads : config.getThreads(), pageNos.size());
+		if (maxWorkers > 0) {
+			numWorkers = Math.min(numWorkers, maxWorkers);
+		}
+		if (numWorkers < 1) {
+			closeDocument(firstDocument);
+			return;
+		}
+		final FormIndex formIndex = getFormIndex(firstDocument);
+		// consumed pages are cleared by the consumer while the last worker may be completing the others
+		final AtomicReferenceArray<CompletableFuture<Page>> pages = new AtomicReferenceArray<CompletableFuture<Page>>(pageNos.size());
+		for (int i = 0; i < pageNos.size(); i++) {
+			pages.set(i, new CompletableFuture<Page>());
+		}
+		final AtomicInteger nextPage = new AtomicInteger();
+		final AtomicInteger runningWorkers = new AtomicInteger(numWorkers);
+		final Semaphore window = new Semaphore(numWorkers * 2);	// pages extracted but not yet consumed
+		
+		boolean isOwnExecutor = false;
+		if (executor == null) {
+			isOwnExecutor = !config.isVirtualThreads();
+			executor = isOwnExecutor ? Executors.newFixedThreadPool(numWorkers) : getParseExecutor();
+		}
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+		for (int i = 0; i < numWorkers; i++) {
+			final boolean isFirstWorker = i == 0;
+			workers.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException, InterruptedException {
+					try {
+						if (isFirstWorker || nextPage.get() < pageNos.size()) {	// other workers may have taken all pages
+							extractPages(isFirstWorker ? firstDocument : loadDocument(source));
+						}
+					} finally {
+						if (runningWorkers.decrementAndGet() == 0) {
+							// pages not taken by a worker could not be read
+							for (int i = 0; i < pages.length(); i++) {
+								CompletableFuture<Page> page = pages.get(i);
+								if (page != null) {
+									page.complete(null);
+								}
+							}
+						}
+					}
+					return null;
+				}
+				
+				private void extractPages(PDDocument loaded) throws IOException, InterruptedException {
+					try (PDDocument document = loaded) {
+						formIndexes.put(document, formIndex);	// same widgets in every document of the file
+						while (true) {
+							window.acquire();
+							int index = nextPage.getAndIncrement();
+							if (index >= pageNos.size()) {
+								window.release();
+								break;
+							}
+							Page page = null;
+							try {
+								page = extractElementsInPage(config, document, pageNos.get(index));
+							} catch (RuntimeException e) {
+								// error in a page should not stop processing of other pages
+								e.printStackTrace();
+							} finally {
+								pages.get(index).complete(page);
+							}
+						}
+					} finally {
+						releaseContentEngine();
+					}
+				}
+			}));
+		}
+		if (isOwnExecutor) {
+			executor.shutdown();
+		}
+		
+		try {
+			for (int i = 0; i < pageNos.size(); i++) {
+				Page page;
+				try {
+					page = pages.get(i).get();	// completed by a worker, or with null when all workers ended
+				} catch (ExecutionException e) {
+					page = null;
+				}
+				pages.set(i, null);	// do not keep consumed pages
+				consumer.accept(page);
+				window.release();
+			}
+		} finally {
+			// stop workers when the consumer failed, and wait for them to close their documents
+			nextPage.set(pageNos.size());
+			window.release(numWorkers);
+			for (Future<?> worker : workers) {
+				try {
+					worker.get();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Close pdf document. Error is only printed because the document is no longer used.
+	 * 
+	 * @param document pdf document to close.
+	 */
+	private void closeDocument(PDDocument document) {
+		try {
+			document.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Extract information from specified page of loaded pdf document.
+	 * 
+	 * @param config configuration properties
+	 * @param document pdf document to read.
+	 * @param pageNo page number of pdf file to extract information from.
+	 * @return Page information extracted from pdf page. null if page does not exist or could not be read.
+	 */
+	Page extractElementsInPage(Config config, PDDocument document, int pageNo) {
         Page pdfPage = new Page();	// pdf page content information
-        
-        try (PDDocument document = PDDocument.load(new File(pdf_filename))) {
-        	numPages = document.getNumberOfPages();
+        try {
+        	int numPages = document.getNumberOfPages();	// number of pages in pdf file
         	if (pageNo >= 0 && pageNo < numPages) {
         		pdfPage.setPage(document.getPage(pageNo));
+        		pdfPage.setPageNo(pageNo);
+        		
+        		PageCache pageCache = getPageCache(config);
+        		LayoutCache layoutCache = getLayoutCache(config);
+        		if (pageCache != null || layoutCache != null) {
+        			pdfPage.setContentKey(pageHasher.getKey(config, document, pdfPage.getPage()));
+        		}
+        		
+        		// reuse jrxml generated from the same page in a previous run
+        		if (pageCache != null) {
+        			File cachedJrxml = pageCache.lookup(pdfPage.getContentKey());
+        			if (cachedJrxml != null) {
+        				pdfPage.setCachedJrxml(cachedJrxml);
+        				stats.addCachedPage();
+        				return pdfPage;
+        			}
+        			pdfPage.setCacheKey(pdfPage.getContentKey());
+        		}
+        		
+        		// reuse jrxml generated from a page with the same content without processing the page
+        		if (layoutCache != null) {
+        			LayoutCache.Layout layout = layoutCache.getByContent(pdfPage.getContentKey());
+        			if (layout != null) {
+        				setLayout(pdfPage, layout);
+        				return pdfPage;
+        			}
+        		}
+        		
+        		// read text, images and lines in a single pass of the page content
+        		PDFContentEngine contentEngine = getContentEngine();
+        		contentEngine.setDocument(document);
+        		contentEngine.setImageCache(getImageCache(config));
+        		try {
+            		ConversionStats.Timer timer = stats.start(ConversionStats.Stage.CONTENT);
+            		contentEngine.processPage(pdfPage.getPage());
+            		timer.stop();
         		
-        		// process text
-        		List<JRDesignElement> textList = extractTextInPage(config, pdfPage, document, pageNo);
-                pdfPage.setElementList(textList);
+            		// reuse jrxml generated from a page with the same layout
+            		if (layoutCache != null) {
+            			setTitle(config, pdfPage, document);
+            			String layoutKey = layoutCache.getFingerprint(config, pdfPage, contentEngine);
+            			LayoutCache.Layout layout = layoutCache.get(layoutKey);
+            			if (layout != null) {
+            				layoutCache.putContent(pdfPage.getContentKey(), layoutKey);
+            				setLayout(pdfPage, layout);
+            				return pdfPage;
+            			}
+            			pdfPage.setLayoutKey(layoutKey);
+            		}
+        		
+            		// process text
+            		timer = stats.start(ConversionStats.Stage.TEXT);
+            		List<JRDesignElement> textList = extractTextInPage(config, pdfPage, document, contentEngine);
+            		timer.stop();
+                    pdfPage.setElementList(textList);
+                
+                    // process images
+                    timer = stats.start(ConversionStats.Stage.IMAGE);
+                    List<JRDesignElement> imgList = extractImageInPage(config, pdfPage, contentEngine);
+                    timer.stop();
+                    pdfPage.addElementList(imgList);
                 
-                // process images
-                List<JRDesignElement> imgList = extractImageInPage(config, pdfPage, document, pageNo);
-                pdfPage.addElementList(imgList);
+                    // process lines and rectangles
+                    timer = stats.start(ConversionStats.Stage.LINE);
+                    List<JRDesignElement> lineList = extractLineInPage(config, pdfPage, contentEngine);
+                    timer.stop();
+                    pdfPage.addElementList(lineList);
                 
-                // process lines and rectangles
-                List<JRDesignElement> lineList = extractLineInPage(config, pdfPage, document, pageNo);
-                pdfPage.addElementList(lineList);
+                    // process input text fields
+                    timer = stats.start(ConversionStats.Stage.FORM);
+                    List<JRDesignElement> inputList = extractFormFields(config, pdfPage, document, pageNo);
+                    timer.stop();
+                    pdfPage.addElementList(inputList);
                 
-                // process input text fields
-                List<JRDesignElement> inputList = extractFormFields(config, pdfPage, document, pageNo);
-                pdfPage.addElementList(inputList);
+                    stats.addElements(pdfPage.getElementList());
+        		} finally {
+        			contentEngine.reset();	// fonts are kept until the document is released
+        		}
                 
         	} else {
         		return null;
@@ -126,39 +933,45 @@ public class JrxmlReport {
         return pdfPage;
 	}
 	
+	/**
+	 * Set jrxml and images of a cached layout to the page.
+	 * 
+	 * @param pdfPage page to write from the layout.
+	 * @param layout layout generated from a page with the same layout.
+	 */
+	private void setLayout(Page pdfPage, LayoutCache.Layout layout) {
+		pdfPage.setLayoutJrxml(layout.getJrxml());
+		for (String imageFile : layout.getImageFiles()) {
+			pdfPage.addImageFile(imageFile);
+		}
+		for (Future<Void> saved : layout.getPendingImages()) {
+			pdfPage.addPendingImage(saved);
+		}
+		stats.addLayoutPage();
+	}
+	
 	/**
 	 * Extract text strings in specified page of the pdf file.
 	 * 
 	 * @param config configuration properties
 	 * @param pdfPage
 	 * @param document
-	 * @param pageNo page number of pdf file to process.
+	 * @param contentEngine engine that has processed the page.
 	 * @return JRDesignElement with same information as extracted text.
 	 * @throws IOException
 	 */
-	private List<JRDesignElement> extractTextInPage(Config config, Page pdfPage, PDDocument document, int pageNo) throws IOException {
+	List<JRDesignElement> extractTextInPage(Config config, Page pdfPage, PDDocument document, PDFContentEngine contentEngine) throws IOException {
 		List<JRDesignElement> elementList = new ArrayList<JRDesignElement>();
 		
-		PDDocumentInformation pdd = document.getDocumentInformation();
-		if (pdd.getTitle() != null) {
-			pdfPage.setTitle(pdd.getTitle());
-		} else {
-			pdfPage.setTitle(config.getTitle());
-		}
+		setTitle(config, pdfPage, document);
 			
-    	PDFTextStripperCustom textStripper = new PDFTextStripperCustom();
- 	
-        textStripper.setSortByPosition(true);
-        textStripper.setStartPage(pageNo+1);
-        textStripper.setEndPage(pageNo+1);
-        String pdfFileText = textStripper.getText(document);
-
-    	List<Map<String, Object>> charList = textStripper.getCharList();
+    	// join words on the same line
+    	TextRunMerger textRunMerger = new TextRunMerger(config.getTextMergeSpacing());
+    	List<TextRun> textRuns = textRunMerger.merge(contentEngine.getTextRuns());
+    	stats.addMergedTexts(textRunMerger.getNumRemoved());
         
-        // split by line
-        String lines[] = pdfFileText.split("\\n");
-        for (int line = 0; line < lines.length; line++) {
-            JRDesignStaticText element = createStaticText(lines[line], charList);
+        for (TextRun textRun : textRuns) {
+            JRDesignStaticText element = createStaticText(textRun, pdfPage.getStyleTable());
             if (element != null) {
             	elementList.add(element);
             }
@@ -166,64 +979,50 @@ public class JrxmlReport {
         return elementList;
 	}
 	
+	/**
+	 * Set title of the page from the document information. Title in configuration is used if document has no title.
+	 * 
+	 * @param config configuration properties
+	 * @param pdfPage page to set title.
+	 * @param document pdf document.
+	 */
+	private void setTitle(Config config, Page pdfPage, PDDocument document) {
+		PDDocumentInformation pdd = document.getDocumentInformation();
+		if (pdd.getTitle() != null) {
+			pdfPage.setTitle(pdd.getTitle());
+		} else {
+			pdfPage.setTitle(config.getTitle());
+		}
+	}
+	
 	/**
 	 * Create static text jrxml component.
 	 * 
-	 * @param textInfo value of static text component.
-	 * @return JRDesignStaticText jrxml static text component.
+	 * @param textRun text string with its position, font and color.
+	 * @param styleTable styles of the page. Font and color are set by a style shared with other elements.
+	 * @return JRDesignStaticText jrxml static text component. null if there is no text.
 	 */
-	private JRDesignStaticText createStaticText(String textInfo, List<Map<String, Object>> charList) {
-		JRDesignStaticText element = null;
-		if (textInfo.length() >= 9) {
-			element = new JRDesignStaticText();
-			String[] attributeList = textInfo.split(",");
-			
-			if (attributeList[10].length() < 1) {
-				return element;
-			}
-			String text = attributeList[10];
+	private JRDesignStaticText createStaticText(TextRun textRun, StyleTable styleTable) {
+		String text = textRun.getText();
+		if (text.length() < 1) {
+			return null;
+		}
+		JRDesignStaticText element = new JRDesignStaticText();
 
-			PDColor textColor = (PDColor)charList.get(0).get("color");
-	        float r = textColor.getComponents()[0];
-	        float g = textColor.getComponents()[1];
-	        float b = textColor.getComponents()[2];
-			
-			// remove characters corresponding to text from charList
-			for (int i = 0; i < text.length(); i++) {
-				charList.remove(0);
-			}
-			
-			int width = convertString2Int(attributeList[2]);
-			int height = convertString2Int(attributeList[3]);
-			
-			int x = convertString2Int(attributeList[0]);
-			int y = convertString2Int(attributeList[1]) - height;
-			
-			String fontName = attributeList[4];
-			float fontSize = convertString2Float(attributeList[5]);
-			
-			int fontWeight = convertString2Int(attributeList[6]);
-			boolean isBold = Boolean.parseBoolean(attributeList[7]);
-			boolean isForceBold = Boolean.parseBoolean(attributeList[8]);
-			boolean isItalic = Boolean.parseBoolean(attributeList[9]);
+		int width = Math.round(textRun.getWidth());
+		int height = Math.round(textRun.getHeight());
+		
+		int x = Math.round(textRun.getX());
+		int y = Math.round(textRun.getY()) - height;
 
-	
-			element.setX(x);
-			element.setY(y);
-			element.setWidth(width);
-			element.setHeight(height);
-			element.setHorizontalTextAlign(HorizontalTextAlignEnum.LEFT);
-			element.setFontName(getFontName(fontName));
-			element.setFontSize(fontSize);
-			if (isBold || isForceBold) {
-				element.setBold(true);
-			}
-			if (isItalic) {
-				element.setItalic(true);
-			}
-			element.setForecolor(new Color(r, g, b));
-			element.setText(text);
-		}
+		element.setX(x);
+		element.setY(y);
+		element.setWidth(width);
+		element.setHeight(height);
+		element.setHorizontalTextAlign(HorizontalTextAlignEnum.LEFT);
+		element.setStyle(styleTable.getStyle(textRun.getFontName(), textRun.getFontSize(),
+				textRun.isBold() || textRun.isForceBold(), textRun.isItalic(), new Color(textRun.getColor())));
+		element.setText(text);
 		return element;
 	}
 	
@@ -232,226 +1031,200 @@ public class JrxmlReport {
 	 * 
 	 * @param config
 	 * @param pdfPage
-	 * @param document
-	 * @param pageNo page number of pdf file to process.
+	 * @param contentEngine engine that has processed the page.
 	 * @return
-	 * @throws IOException
 	 */
-	private List<JRDesignElement> extractImageInPage(Config config, Page pdfPage, PDDocument document, int pageNo) throws IOException {
+	List<JRDesignElement> extractImageInPage(Config config, Page pdfPage, PDFContentEngine contentEngine) {
 		List<JRDesignElement> elementList = new ArrayList<JRDesignElement>();
 		
-		PDFStreamEngineCustom streamEngine = new PDFStreamEngineCustom();
-		streamEngine.setImgDir(config.getImgDir());
-        streamEngine.processPage(document.getPage(pageNo));
-        List<String> imgInfo = streamEngine.getImageInfo();
-        for (String img : imgInfo) {
-        	JRDesignImage element = null;
-        	if (img.length() >= 5) {
-        		element = new JRDesignImage(null);
-        		String[] imgAttributes = img.split(",");
-        		String imgFilename = imgAttributes[0];
+        float pageHeight = pdfPage.getPage().getMediaBox().getHeight();
+        for (ImagePlacement img : contentEngine.getImageInfo()) {
+        	JRDesignImage element = new JRDesignImage(null);
 
-        		int width = convertString2Int(imgAttributes[3]);
-        		int height = convertString2Int(imgAttributes[4]);
+        	int width = Math.round(img.getWidth());
+        	int height = Math.round(img.getHeight());
 
-        		int x = convertString2Int(imgAttributes[1]);
-        		int y = Math.round(pdfPage.getPage().getMediaBox().getHeight()) - convertString2Int(imgAttributes[2]) - height;
-        		
-        		element.setX(x);
-        		element.setY(y);
-        		element.setWidth(width);
-        		element.setHeight(height);
-        		
-        		element.setFill(FillEnum.SOLID);
-        		element.setScaleImage(ScaleImageEnum.RETAIN_SHAPE);
-        		element.setHorizontalImageAlign(HorizontalImageAlignEnum.LEFT);
-        		element.setVerticalImageAlign(VerticalImageAlignEnum.TOP);
-        		element.setOnErrorType(OnErrorTypeEnum.BLANK);
-        		element.setUsingCache(true);
-//        		element.setLazy(isLazy);
-        		
-        		JRDesignExpression expression = new JRDesignExpression();
-        		expression.setText("\"" + config.getImgDir() + imgFilename + "\"");
-        		element.setExpression(expression);
-        		
-        		elementList.add(element);
-        	}
+        	int x = Math.round(img.getX());
+        	int y = Math.round(pageHeight) - Math.round(img.getY()) - height;
+        	
+        	element.setX(x);
+        	element.setY(y);
+        	element.setWidth(width);
+        	element.setHeight(height);
+        	
+        	element.setFill(FillEnum.SOLID);
+        	element.setScaleImage(ScaleImageEnum.RETAIN_SHAPE);
+        	element.setHorizontalImageAlign(HorizontalImageAlignEnum.LEFT);
+        	element.setVerticalImageAlign(VerticalImageAlignEnum.TOP);
+        	element.setOnErrorType(OnErrorTypeEnum.BLANK);
+        	element.setUsingCache(true);
+//        	element.setLazy(isLazy);
+        	
+        	JRDesignExpression expression = new JRDesignExpression();
+        	String imageFile = getImagePath(config, img);
+        	expression.setText("\"" + imageFile + "\"");
+        	pdfPage.addImageFile(imageFile);
+        	pdfPage.addPendingImage(img.getSaved());
+        	element.setExpression(expression);
+        	
+        	elementList.add(element);
         }
         return elementList;
 	}
 
+	/**
+	 * Return path of image file to use in image expression.
+	 * 
+	 * @param config configuration properties
+	 * @param img image in the page.
+	 * @return path of saved image file in img directory.
+	 */
+	private String getImagePath(Config config, ImagePlacement img) {
+		String imgDir = config.getImgDir();
+		return imgDir + (imgDir.endsWith("/") ? "" : "/") + img.getImageFilename();
+	}
+	
 	/**
 	 * Extract lines in specified page of the pdf file.
 	 * 
 	 * @param config
 	 * @param pdfPage
-	 * @param document
-	 * @param pageNo
+	 * @param contentEngine engine that has processed the page.
 	 * @return
-	 * @throws IOException
 	 */
-	private List<JRDesignElement> extractLineInPage(Config config, Page pdfPage, PDDocument document, int pageNo) throws IOException {
+	List<JRDesignElement> extractLineInPage(Config config, Page pdfPage, PDFContentEngine contentEngine) {
 		List<JRDesignElement> elementList = new ArrayList<JRDesignElement>();
 		
-        ArrayList<Rectangle2D>rectList = new ArrayList<Rectangle2D>();
-        PDPage page = pdfPage.getPage();
-        double page_height = page.getCropBox().getUpperRightY();
-        LineCatcher lineCatcher = new LineCatcher(page);
-        lineCatcher.processPage(page);
-        List<String> lineInfo = lineCatcher.getLineInfo();
+        // join short segments of the same line
+        PathMerger pathMerger = new PathMerger(config.getLineMergeTolerance());
+        List<PathSegment> lines = pathMerger.merge(contentEngine.getLineInfo());
+        stats.addMergedLines(pathMerger.getNumRemoved());
         
-        for (String line : lineInfo) {
+        float pageHeight = pdfPage.getPage().getMediaBox().getHeight();
+        for (PathSegment line : lines) {
         	JRDesignElement element = null;
-        	if (line.length() >= 5) {
-        		String[] lineAttributes = line.split(",");
 
-        		int width = convertString2Int(lineAttributes[2]);
-        		int height = convertString2Int(lineAttributes[3]);
+        	int width = Math.round(line.getWidth());
+        	int height = Math.round(line.getHeight());
 
-        		int x = convertString2Int(lineAttributes[0]);
-        		int y = Math.round(pdfPage.getPage().getMediaBox().getHeight()) - convertString2Int(lineAttributes[1]) - height;
-        		
-        		boolean isRect = Boolean.parseBoolean(lineAttributes[4]);
-        		if (isRect) {
-        			element = new JRDesignRectangle();
-        			element.setX(x);
-        			element.setY(y);
-        			element.setWidth(width);
-        			element.setHeight(height);
-        		} else {
-        			element = new JRDesignLine();
-        			element.setX(x);
-        			element.setY(y);
-        			element.setWidth(width);
-        			element.setHeight(height);
-        		}
-        		elementList.add(element);
+        	int x = Math.round(line.getX());
+        	int y = Math.round(pageHeight) - Math.round(line.getY()) - height;
+        	
+        	if (line.isRectangle()) {
+        		element = new JRDesignRectangle();
+        		element.setX(x);
+        		element.setY(y);
+        		element.setWidth(width);
+        		element.setHeight(height);
+        	} else {
+        		element = new JRDesignLine();
+        		element.setX(x);
+        		element.setY(y);
+        		element.setWidth(width);
+        		element.setHeight(height);
         	}
+        	elementList.add(element);
         }
         
 		return elementList;
 	}
 	
-	private List<JRDesignElement> extractFormFields(Config config, Page pdfPage, PDDocument document, int pageNo) throws IOException {
-		List<JRDesignElement> elementList = new ArrayList<JRDesignElement>();
-		
-		Map<String, Object> fields = new HashMap<String, Object>();
-		
-        PDDocumentCatalog pdCatalog = document.getDocumentCatalog();
-        PDAcroForm pdAcroForm = pdCatalog.getAcroForm();
-        for (PDField pdField : pdAcroForm.getFields()) {
-
-        	fields.put(pdField.getPartialName(), java.lang.String.class);	// TODO set right class
-        	JRDesignTextField element = createTextField(pdField, pdfPage);
-        	if (element != null) {
-        		elementList.add(element);
-        	}
-        }
-        pdfPage.setFields(fields);
-        return elementList;
-	}
-	
-	private JRDesignTextField createTextField(PDField pdField, Page pdfPage) {
-		JRDesignTextField element = null;
-        	switch (pdField.getFieldType()) {
-        	case "Tx":
-        		PDTextField pdTextField = (PDTextField)pdField;
-        		int alignment = pdTextField.getQ();
-
-        		element = new JRDesignTextField();
-        		
-        		COSDictionary fieldDict = pdField.getCOSObject();
-        		COSArray fieldAreaArray = (COSArray)fieldDict.getDictionaryObject(COSName.RECT);
-
-        		float left = (float) ((COSNumber)fieldAreaArray.get(0)).floatValue();
-        		float bottom = (float) ((COSNumber)fieldAreaArray.get(1)).floatValue();
-        		float right = (float) ((COSNumber)fieldAreaArray.get(2)).floatValue();
-        		float top = (float) ((COSNumber)fieldAreaArray.get(3)).floatValue();
-        		
-        		int height = Math.round(top-bottom);
-        		int y = Math.round(pdfPage.getPage().getMediaBox().getHeight() - top);
-        		
-        		element.setBlankWhenNull(true);
-        		element.setX(Math.round(left));
-        		element.setY(y);
-        		element.setWidth(Math.round(right-left));
-        		element.setHeight(height);
-        		switch (alignment) {
-        		case PDTextField.QUADDING_LEFT:
-        			element.setHorizontalTextAlign(HorizontalTextAlignEnum.LEFT);
-        			break;
-        		case PDTextField.QUADDING_RIGHT:
-        			element.setHorizontalTextAlign(HorizontalTextAlignEnum.RIGHT);
-        			break;
-        		case PDTextField.QUADDING_CENTERED:
-        			element.setHorizontalTextAlign(HorizontalTextAlignEnum.CENTER);
-        			break;
-        		}
-        		element.setFontSize(22f);
-        	    JRDesignExpression expression = new JRDesignExpression();
-//        	    expression.setValueClass(java.lang.String.class);
-        	    expression.setText("$F{" + pdField.getPartialName() + "}");
-        	    element.setExpression(expression);
-
-        		break;
-        	}
-		return element;
-	}
-	
 	/**
-	 * Convert String to int. If specified String is null or an illegal int, return 0.
+	 * Return index of form widgets in the document. Index is built on the first call for each document, unless an index
+	 * built from another document of the same file has been registered for it.
 	 * 
-	 * @param value String value to convert to int.
-	 * @return int value of String as an rounded int.
+	 * @param document pdf document.
+	 * @return widgets by page.
 	 */
-	private int convertString2Int(String value) {
-		if (value == null) {
-			return 0;
-		}
-		try {
-			return Math.round(Float.parseFloat(value));
-		} catch (NumberFormatException e) {
-			return 0;
+	private FormIndex getFormIndex(PDDocument document) {
+		FormIndex formIndex = formIndexes.get(document);
+		if (formIndex == null) {
+			formIndex = new FormIndex(document);
+			formIndexes.put(document, formIndex);
 		}
+		return formIndex;
 	}
 	
 	/**
-	 * Convert String to float.  If specified String is null or an illegal float, return 0.
+	 * Extract form fields drawn on specified page of the pdf file.
 	 * 
-	 * @param value
-	 * @return
+	 * @param config configuration properties
+	 * @param pdfPage page to add fields of the form.
+	 * @param document pdf document.
+	 * @param pageNo page number (0 origin).
+	 * @return elements showing values of the fields.
+	 * @throws IOException
 	 */
-	private float convertString2Float(String value) {
-		if (value == null) {
-			return 0;
-		}
-		try {
-			return Float.parseFloat(value);
-		} catch (NumberFormatException e) {
-			return 0;
+	List<JRDesignElement> extractFormFields(Config config, Page pdfPage, PDDocument document, int pageNo) throws IOException {
+		List<JRDesignElement> elementList = new ArrayList<JRDesignElement>();
+		
+		Map<String, Object> fields = new LinkedHashMap<String, Object>();
+		for (FormIndex.FormWidget formWidget : getFormIndex(document).getWidgets(pageNo)) {
+			fields.put(formWidget.getFieldName(), formWidget.getValueClass());
+			elementList.add(createTextField(formWidget, pdfPage));
 		}
+		pdfPage.setFields(fields);
+		return elementList;
 	}
 	
 	/**
-	 * Extract font name from argument 'value'.
+	 * Create text field at the position of a form widget.
+	 * Check box shows "X" when the value is true and radio button shows "X" when the value is the export value of its widget.
 	 * 
-	 * @param value
-	 * @return
+	 * @param formWidget widget of the field.
+	 * @param pdfPage page the widget is on.
+	 * @return text field.
 	 */
-	private String getFontName(String value) {
-		if (value == null) {
-			return null;
-		}
-		String fontName = value;
-		String[] fontParts = value.split("\\+");
-		if (fontParts.length > 0) {
-			fontName = fontParts[1];
-		}
-		fontParts = fontName.split("-");
-		if (fontParts.length > 0) {
-			fontName = fontParts[0];
+	private JRDesignTextField createTextField(FormIndex.FormWidget formWidget, Page pdfPage) {
+		JRDesignTextField element = new JRDesignTextField();
+		
+		PDRectangle rect = formWidget.getRectangle();
+		float top = rect.getUpperRightY();
+		int y = Math.round(pdfPage.getPage().getMediaBox().getHeight() - top);
+		
+		element.setBlankWhenNull(true);
+		element.setX(Math.round(rect.getLowerLeftX()));
+		element.setY(y);
+		element.setWidth(Math.round(rect.getWidth()));
+		element.setHeight(Math.round(rect.getHeight()));
+		
+		String field = "$F{" + formWidget.getFieldName() + "}";
+		String expressionText;
+		if (formWidget.isCheckBox()) {
+			expressionText = "Boolean.TRUE.equals(" + field + ") ? \"X\" : \"\"";
+			element.setHorizontalTextAlign(HorizontalTextAlignEnum.CENTER);
+		} else if (formWidget.isRadioButton()) {
+			String onValue = formWidget.getOnValue();
+			expressionText = onValue == null ? "\"\""
+					: "\"" + escapeJavaString(onValue) + "\".equals(" + field + ") ? \"X\" : \"\"";
+			element.setHorizontalTextAlign(HorizontalTextAlignEnum.CENTER);
+		} else {
+			if (formWidget.getValueClass() == java.util.List.class) {
+				expressionText = field + " == null ? null : String.join(\", \", " + field + ")";
+			} else {
+				expressionText = field;
+			}
+			switch (formWidget.getQuadding()) {
+			case PDVariableText.QUADDING_LEFT:
+				element.setHorizontalTextAlign(HorizontalTextAlignEnum.LEFT);
+				break;
+			case PDVariableText.QUADDING_RIGHT:
+				element.setHorizontalTextAlign(HorizontalTextAlignEnum.RIGHT);
+				break;
+			case PDVariableText.QUADDING_CENTERED:
+				element.setHorizontalTextAlign(HorizontalTextAlignEnum.CENTER);
+				break;
+			}
 		}
-		return fontName;
+		element.setFontSize(22f);
+	    JRDesignExpression expression = new JRDesignExpression();
+	    expression.setText(expressionText);
+	    element.setExpression(expression);
+		return element;
+	}
+	
+	private static String escapeJavaString(String text) {
+		return text.replace("\\", "\\\\").replace("\"", "\\\"");
 	}
 	
 	/**
@@ -462,7 +1235,7 @@ public class JrxmlReport {
 	 * @return JasperDesign jasperreports object that can be used to generate jrxml file.
 	 * @throws JRException when there is JasperReports error generating JasperDesign object.
 	 */
-	private JasperDesign generateDesign(Config config, Page page) throws JRException {
+	JasperDesign generateDesign(Config config, Page page) throws JRException {
 	    //JasperDesign
 	    JasperDesign jasperDesign = new JasperDesign();
 	    jasperDesign.setName(page.getTitle());
@@ -476,20 +1249,9 @@ public class JrxmlReport {
 	    jasperDesign.setBottomMargin(config.getMarginBottom());
 		
 		//Fonts
-//		JRDesignStyle normalStyle = new JRDesignStyle();
-//		normalStyle.setName("Sans_Normal");
-//		normalStyle.setDefault(true);
-//		normalStyle.setFontName("DejaVu Sans");
-//		normalStyle.setFontSize(8f);
-//		jasperDesign.addStyle(normalStyle);
-//
-	    // Style - not used
-//		JRDesignStyle boldStyle = new JRDesignStyle();
-//		boldStyle.setName("Sans_Bold");
-//		boldStyle.setFontName("DejaVu Sans");
-//		boldStyle.setFontSize(8f);
-//		boldStyle.setBold(Boolean.TRUE);
-//		jasperDesign.addStyle(boldStyle);
+	    for (JRDesignStyle style : page.getStyleTable().getStyles()) {
+	    	jasperDesign.addStyle(style);
+	    }
 
 		// TODO need to generate query
 	    //Query
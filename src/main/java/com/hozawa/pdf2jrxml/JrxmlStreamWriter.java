@@ -0,0 +1,358 @@
+package com.hozawa.pdf2jrxml;
+
+import java.awt.Color;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.sf.jasperreports.engine.JRBand;
+import net.sf.jasperreports.engine.JRElement;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRExpression;
+import net.sf.jasperreports.engine.JRField;
+import net.sf.jasperreports.engine.JRSection;
+import net.sf.jasperreports.engine.JRStyle;
+import net.sf.jasperreports.engine.design.JRDesignElement;
+import net.sf.jasperreports.engine.design.JRDesignGraphicElement;
+import net.sf.jasperreports.engine.design.JRDesignImage;
+import net.sf.jasperreports.engine.design.JRDesignLine;
+import net.sf.jasperreports.engine.design.JRDesignRectangle;
+import net.sf.jasperreports.engine.design.JRDesignStaticText;
+import net.sf.jasperreports.engine.design.JRDesignTextElement;
+import net.sf.jasperreports.engine.design.JRDesignTextField;
+import net.sf.jasperreports.engine.design.JasperDesign;
+import net.sf.jasperreports.engine.type.OnErrorTypeEnum;
+import net.sf.jasperreports.engine.util.JRColorUtil;
+
+/**
+ * Write jrxml file with StAX. Report is written band by band and element by element directly to the output stream,
+ * so no copy of the report is built in memory while writing.
+ * Supports the elements generated by JrxmlReport: static text, text field, image, line and rectangle.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class JrxmlStreamWriter {
+	private static final String JRXML_NAMESPACE = "http://jasperreports.sourceforge.net/jasperreports";
+	private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+	private static final String SCHEMA_LOCATION = JRXML_NAMESPACE + " http://jasperreports.sourceforge.net/xsd/jasperreport.xsd";
+
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	private final XMLStreamWriter writer;
+	private final String encoding;
+	private int depth = 0;	// nesting level used to indent elements
+	private boolean lastWasText = false;	// true if content of element being closed is text
+
+	/**
+	 * Constructor
+	 *
+	 * @param out stream to write jrxml to. Stream is not closed by this writer.
+	 * @param encoding encoding of jrxml file.
+	 * @throws JRException when writer could not be created.
+	 */
+	public JrxmlStreamWriter(OutputStream out, String encoding) throws JRException {
+		this.encoding = encoding;
+		try {
+			this.writer = OUTPUT_FACTORY.createXMLStreamWriter(out, encoding);
+		} catch (XMLStreamException e) {
+			throw new JRException(e);
+		}
+	}
+
+	/**
+	 * Write report design as jrxml.
+	 *
+	 * @param design report design to write.
+	 * @throws JRException when design could not be written.
+	 */
+	public void writeReport(JasperDesign design) throws JRException {
+		try {
+			writer.writeStartDocument(encoding, "1.0");
+			startElement("jasperReport");
+			writer.writeDefaultNamespace(JRXML_NAMESPACE);
+			writer.writeNamespace("xsi", XSI_NAMESPACE);
+			writer.writeAttribute("xsi:schemaLocation", SCHEMA_LOCATION);
+			writer.writeAttribute("name", design.getName());
+			writeAttribute("pageWidth", design.getPageWidth());
+			writeAttribute("pageHeight", design.getPageHeight());
+			writeAttribute("columnWidth", design.getColumnWidth());
+			if (design.getColumnSpacing() != 0) {
+				writeAttribute("columnSpacing", design.getColumnSpacing());
+			}
+			writeAttribute("leftMargin", design.getLeftMargin());
+			writeAttribute("rightMargin", design.getRightMargin());
+			writeAttribute("topMargin", design.getTopMargin());
+			writeAttribute("bottomMargin", design.getBottomMargin());
+			writer.writeAttribute("uuid", design.getUUID().toString());
+
+			for (JRStyle style : design.getStyles()) {
+				writeStyle(style);
+			}
+			for (JRField field : design.getFields()) {
+				emptyElement("field");
+				writer.writeAttribute("name", field.getName());
+				writer.writeAttribute("class", field.getValueClassName());
+			}
+
+			writeBand("title", design.getTitle());
+			writeBand("pageHeader", design.getPageHeader());
+			writeBand("columnHeader", design.getColumnHeader());
+			writeSection("detail", design.getDetailSection());
+			writeBand("columnFooter", design.getColumnFooter());
+			writeBand("pageFooter", design.getPageFooter());
+			writeBand("summary", design.getSummary());
+
+			endElement();
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.flush();
+		} catch (XMLStreamException e) {
+			throw new JRException(e);
+		}
+	}
+
+	/**
+	 * Close writer. Underlying output stream is not closed.
+	 *
+	 * @throws JRException
+	 */
+	public void close() throws JRException {
+		try {
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new JRException(e);
+		}
+	}
+
+	private void writeStyle(JRStyle style) throws XMLStreamException {
+		emptyElement("style");
+		writer.writeAttribute("name", style.getName());
+		if (style.isDefault()) {
+			writer.writeAttribute("isDefault", "true");
+		}
+		writeColorAttribute("forecolor", style.getOwnForecolor());
+		writeAttribute("fontName", style.getOwnFontName());
+		writeAttribute("fontSize", style.getOwnFontsize());
+		writeAttribute("isBold", style.isOwnBold());
+		writeAttribute("isItalic", style.isOwnItalic());
+	}
+
+	private void writeSection(String name, JRSection section) throws XMLStreamException, JRException {
+		if (section == null || section.getBands() == null || section.getBands().length == 0) {
+			return;
+		}
+		startElement(name);
+		for (JRBand band : section.getBands()) {
+			writeBandContent(band);
+		}
+		endElement();
+	}
+
+	private void writeBand(String name, JRBand band) throws XMLStreamException, JRException {
+		if (band == null) {
+			return;
+		}
+		startElement(name);
+		writeBandContent(band);
+		endElement();
+	}
+
+	private void writeBandContent(JRBand band) throws XMLStreamException, JRException {
+		JRElement[] elements = band.getElements();
+		if (elements.length == 0) {
+			emptyElement("band");
+			writeAttribute("height", band.getHeight());
+			return;
+		}
+		startElement("band");
+		writeAttribute("height", band.getHeight());
+		for (JRElement element : elements) {
+			writeElement(element);
+		}
+		endElement();
+	}
+
+	/**
+	 * Write a report element.
+	 *
+	 * @param element element to write.
+	 * @throws XMLStreamException
+	 * @throws JRException when element type is not supported.
+	 */
+	private void writeElement(JRElement element) throws XMLStreamException, JRException {
+		if (element instanceof JRDesignStaticText) {
+			JRDesignStaticText staticText = (JRDesignStaticText)element;
+			startElement("staticText");
+			writeReportElement(staticText);
+			writeTextElement(staticText);
+			startElement("text");
+			writeCData(staticText.getText());
+			endElement();
+			endElement();
+		} else if (element instanceof JRDesignTextField) {
+			JRDesignTextField textField = (JRDesignTextField)element;
+			startElement("textField");
+			writeAttribute("isBlankWhenNull", textField.isOwnBlankWhenNull());
+			writeReportElement(textField);
+			writeTextElement(textField);
+			writeExpression("textFieldExpression", textField.getExpression());
+			endElement();
+		} else if (element instanceof JRDesignImage) {
+			JRDesignImage image = (JRDesignImage)element;
+			startElement("image");
+			writeAttribute("scaleImage", image.getOwnScaleImageValue() == null ? null : image.getOwnScaleImageValue().getName());
+			writeAttribute("hAlign", image.getOwnHorizontalImageAlign() == null ? null : image.getOwnHorizontalImageAlign().getName());
+			writeAttribute("vAlign", image.getOwnVerticalImageAlign() == null ? null : image.getOwnVerticalImageAlign().getName());
+			writeAttribute("isUsingCache", image.getUsingCache());
+			if (image.getOnErrorTypeValue() != OnErrorTypeEnum.ERROR) {
+				writer.writeAttribute("onErrorType", image.getOnErrorTypeValue().getName());
+			}
+			writeReportElement(image);
+			writeGraphicElement(image);
+			writeExpression("imageExpression", image.getExpression());
+			endElement();
+		} else if (element instanceof JRDesignLine) {
+			JRDesignLine line = (JRDesignLine)element;
+			startElement("line");
+			writeReportElement(line);
+			writeGraphicElement(line);
+			endElement();
+		} else if (element instanceof JRDesignRectangle) {
+			JRDesignRectangle rectangle = (JRDesignRectangle)element;
+			startElement("rectangle");
+			writeReportElement(rectangle);
+			writeGraphicElement(rectangle);
+			endElement();
+		} else {
+			throw new JRException("Element not supported by streaming writer: " + element.getClass().getName());
+		}
+	}
+
+	private void writeReportElement(JRDesignElement element) throws XMLStreamException {
+		emptyElement("reportElement");
+		if (element.getStyle() != null) {
+			writer.writeAttribute("style", element.getStyle().getName());
+		} else {
+			writeAttribute("style", element.getStyleNameReference());
+		}
+		writeAttribute("x", element.getX());
+		writeAttribute("y", element.getY());
+		writeAttribute("width", element.getWidth());
+		writeAttribute("height", element.getHeight());
+		writeColorAttribute("forecolor", element.getOwnForecolor());
+		writer.writeAttribute("uuid", element.getUUID().toString());
+	}
+
+	private void writeGraphicElement(JRDesignGraphicElement element) throws XMLStreamException {
+		if (element.getOwnFillValue() != null) {
+			emptyElement("graphicElement");
+			writer.writeAttribute("fill", element.getOwnFillValue().getName());
+		}
+	}
+
+	private void writeTextElement(JRDesignTextElement element) throws XMLStreamException {
+		boolean hasFont = element.getOwnFontName() != null || element.getOwnFontsize() != null
+				|| element.isOwnBold() != null || element.isOwnItalic() != null;
+		if (element.getOwnHorizontalTextAlign() == null && !hasFont) {
+			return;
+		}
+		if (!hasFont) {
+			emptyElement("textElement");
+			writer.writeAttribute("textAlignment", element.getOwnHorizontalTextAlign().getName());
+			return;
+		}
+		startElement("textElement");
+		if (element.getOwnHorizontalTextAlign() != null) {
+			writer.writeAttribute("textAlignment", element.getOwnHorizontalTextAlign().getName());
+		}
+		emptyElement("font");
+		writeAttribute("fontName", element.getOwnFontName());
+		writeAttribute("size", element.getOwnFontsize());
+		writeAttribute("isBold", element.isOwnBold());
+		writeAttribute("isItalic", element.isOwnItalic());
+		endElement();
+	}
+
+	private void writeExpression(String name, JRExpression expression) throws XMLStreamException {
+		if (expression == null) {
+			return;
+		}
+		startElement(name);
+		writeCData(expression.getText());
+		endElement();
+	}
+
+	/**
+	 * Write text as CDATA. "]]>" in the text is split into two CDATA sections.
+	 *
+	 * @param text text to write.
+	 * @throws XMLStreamException
+	 */
+	private void writeCData(String text) throws XMLStreamException {
+		if (text == null) {
+			text = "";
+		}
+		int start = 0;
+		int end;
+		while ((end = text.indexOf("]]>", start)) >= 0) {
+			writer.writeCData(text.substring(start, end + 2));
+			start = end + 2;
+		}
+		writer.writeCData(text.substring(start));
+		lastWasText = true;
+	}
+
+	// element nesting with indentation
+	private void startElement(String name) throws XMLStreamException {
+		indent();
+		writer.writeStartElement(name);
+		depth++;
+	}
+	private void emptyElement(String name) throws XMLStreamException {
+		indent();
+		writer.writeEmptyElement(name);
+	}
+	private void endElement() throws XMLStreamException {
+		depth--;
+		if (!lastWasText) {
+			indent();
+		}
+		writer.writeEndElement();
+		lastWasText = false;
+	}
+	private void indent() throws XMLStreamException {
+		writer.writeCharacters("\n");
+		for (int i = 0; i < depth; i++) {
+			writer.writeCharacters("\t");
+		}
+		lastWasText = false;
+	}
+
+	// attributes
+	private void writeAttribute(String name, int value) throws XMLStreamException {
+		writer.writeAttribute(name, Integer.toString(value));
+	}
+	private void writeAttribute(String name, String value) throws XMLStreamException {
+		if (value != null) {
+			writer.writeAttribute(name, value);
+		}
+	}
+	private void writeAttribute(String name, Boolean value) throws XMLStreamException {
+		if (value != null) {
+			writer.writeAttribute(name, value.toString());
+		}
+	}
+	private void writeAttribute(String name, Float value) throws XMLStreamException {
+		if (value != null) {
+			float f = value.floatValue();
+			writer.writeAttribute(name, f == (int) f ? Integer.toString((int) f) : Float.toString(f));
+		}
+	}
+	private void writeColorAttribute(String name, Color value) throws XMLStreamException {
+		if (value != null) {
+			writer.writeAttribute(name, "#" + JRColorUtil.getColorHexa(value));
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package com.hozawa.pdf2jrxml;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Cache of jrxml generated from page layouts. Filled-in copies of the same form have different content streams
+ * but the same layout, so a page is identified by a fingerprint of what is drawn on it (text, lines, images),
+ * the rectangles and attributes of its form widgets and the properties used to generate the jrxml.
+ * Values of form fields are not part of the fingerprint because they are not written to the jrxml.
+ * A page matching a known fingerprint is written from the cached jrxml without building the report design.
+ * Layouts are also looked up by the content key of the page (PageHasher) before the page content is processed, so a
+ * page with the same content and widgets as a converted page, e.g. a form filled in through its fields, is written
+ * without processing its content at all.
+ * Least recently used layouts are removed when the cache is full.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class LayoutCache {
+	private static final String HASH_ALGORITHM = "SHA-1";
+	private static final COSName[] FIELD_KEYS = {COSName.T, COSName.FT, COSName.FF, COSName.Q, COSName.OPT,
+			COSName.MAX_LEN, COSName.DA};	// field attributes that change generated elements. Values (/V) are not included
+	private static final int MAX_FIELD_DEPTH = 32;	// maximum depth of /Parent chain of a widget
+
+	private final Map<String, Layout> layouts;			// fingerprint -> layout
+	private final Map<String, String> contentLayouts;	// content key -> fingerprint
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxLayouts maximum number of layouts to keep.
+	 */
+	public LayoutCache(final int maxLayouts) {
+		this.layouts = new LinkedHashMap<String, Layout>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Layout> eldest) {
+				return size() > maxLayouts;
+			}
+		};
+		this.contentLayouts = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > maxLayouts;
+			}
+		};
+	}
+
+	/**
+	 * Compute fingerprint of the layout of a page. Page content must have been processed by the content engine.
+	 *
+	 * @param config configuration properties
+	 * @param pdfPage page to compute fingerprint. Title must be set.
+	 * @param contentEngine engine that has processed the page.
+	 * @return hex string of hash.
+	 */
+	public String getFingerprint(Config config, Page pdfPage, PDFContentEngine contentEngine) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		PDPage page = pdfPage.getPage();
+		updateString(digest, PageHasher.getConfigFingerprint(config));
+		updateString(digest, pdfPage.getTitle());
+		updateString(digest, page.getMediaBox().toString() + "/" + page.getRotation());
+
+		List<TextRun> textRuns = contentEngine.getTextRuns();
+		updateInt(digest, textRuns.size());
+		for (TextRun textRun : textRuns) {
+			updateFloat(digest, textRun.getX());
+			updateFloat(digest, textRun.getY());
+			updateFloat(digest, textRun.getWidth());
+			updateFloat(digest, textRun.getHeight());
+			updateFloat(digest, textRun.getFontSize());
+			updateInt(digest, textRun.getColor());
+			updateInt(digest, (textRun.isBold() ? 1 : 0) | (textRun.isForceBold() ? 2 : 0) | (textRun.isItalic() ? 4 : 0));
+			updateString(digest, String.valueOf(textRun.getFontName()));
+			updateString(digest, textRun.getText());
+		}
+		List<PathSegment> lines = contentEngine.getLineInfo();
+		updateInt(digest, lines.size());
+		for (PathSegment line : lines) {
+			updateFloat(digest, line.getX());
+			updateFloat(digest, line.getY());
+			updateFloat(digest, line.getWidth());
+			updateFloat(digest, line.getHeight());
+			updateInt(digest, line.isRectangle() ? 1 : 0);
+		}
+		List<ImagePlacement> images = contentEngine.getImageInfo();
+		updateInt(digest, images.size());
+		for (ImagePlacement image : images) {
+			updateFloat(digest, image.getX());
+			updateFloat(digest, image.getY());
+			updateFloat(digest, image.getWidth());
+			updateFloat(digest, image.getHeight());
+			updateString(digest, image.getImageFilename());	// named by hash of image data
+		}
+		updateWidgets(digest, page);
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Return layout generated from a page with the fingerprint.
+	 *
+	 * @param fingerprint fingerprint of the layout.
+	 * @return layout. null if the layout is not cached.
+	 */
+	public synchronized Layout get(String fingerprint) {
+		return layouts.get(fingerprint);
+	}
+
+	/**
+	 * Return layout generated from a page with the same content. Page content need not be processed.
+	 *
+	 * @param contentKey content key of the page.
+	 * @return layout. null if no page with the content has been converted or its layout has been removed.
+	 */
+	public synchronized Layout getByContent(String contentKey) {
+		String fingerprint = contentLayouts.get(contentKey);
+		return fingerprint == null ? null : layouts.get(fingerprint);
+	}
+
+	/**
+	 * Store layout generated from a page.
+	 *
+	 * @param fingerprint fingerprint of the layout.
+	 * @param contentKey content key of the page. null if not known.
+	 * @param layout layout generated from the page.
+	 */
+	public synchronized void put(String fingerprint, String contentKey, Layout layout) {
+		layouts.put(fingerprint, layout);
+		putContent(contentKey, fingerprint);
+	}
+
+	/**
+	 * Record the layout of a page content.
+	 *
+	 * @param contentKey content key of the page. null if not known.
+	 * @param fingerprint fingerprint of the layout of the page.
+	 */
+	public synchronized void putContent(String contentKey, String fingerprint) {
+		if (contentKey != null) {
+			contentLayouts.put(contentKey, fingerprint);
+		}
+	}
+
+	/**
+	 * Jrxml generated from a page and the image files it refers to.
+	 */
+	public static class Layout {
+		private final byte[] jrxml;
+		private final List<String> imageFiles;
+		private final List<Future<Void>> pendingImages;
+
+		/**
+		 * Constructor
+		 *
+		 * @param jrxml content of jrxml file.
+		 * @param imageFiles paths of image files referred to by the jrxml.
+		 * @param pendingImages futures of the image files being saved.
+		 */
+		public Layout(byte[] jrxml, List<String> imageFiles, List<Future<Void>> pendingImages) {
+			this.jrxml = jrxml;
+			this.imageFiles = Collections.unmodifiableList(new ArrayList<String>(imageFiles));
+			this.pendingImages = Collections.unmodifiableList(new ArrayList<Future<Void>>(pendingImages));
+		}
+
+		public byte[] getJrxml() {
+			return this.jrxml;
+		}
+		public List<String> getImageFiles() {
+			return this.imageFiles;
+		}
+		public List<Future<Void>> getPendingImages() {
+			return this.pendingImages;
+		}
+	}
+
+	/**
+	 * Add rectangles, appearance state names and field attributes of form widgets in the page.
+	 */
+	private static void updateWidgets(MessageDigest digest, PDPage page) {
+		COSBase annotationsBase = page.getCOSObject().getDictionaryObject(COSName.ANNOTS);
+		if (!(annotationsBase instanceof COSArray)) {
+			updateInt(digest, 0);	// no annotations or malformed /Annots
+			return;
+		}
+		COSArray annotations = (COSArray)annotationsBase;
+		updateInt(digest, annotations.size());
+		for (int i = 0; i < annotations.size(); i++) {
+			COSBase annotation = annotations.getObject(i);
+			if (!(annotation instanceof COSDictionary)) {
+				continue;
+			}
+			COSDictionary widget = (COSDictionary)annotation;
+			if (!COSName.WIDGET.equals(widget.getCOSName(COSName.SUBTYPE))) {
+				continue;
+			}
+			PDRectangle rect = widget.getDictionaryObject(COSName.RECT) instanceof COSArray
+					? new PDRectangle((COSArray)widget.getDictionaryObject(COSName.RECT)) : null;
+			updateString(digest, String.valueOf(rect));
+			// on state name is the export value of check boxes and radio buttons
+			COSBase appearance = widget.getDictionaryObject(COSName.AP);
+			COSBase normal = appearance instanceof COSDictionary ? ((COSDictionary)appearance).getDictionaryObject(COSName.N) : null;
+			if (normal instanceof COSDictionary && !(normal instanceof COSStream)) {
+				List<String> states = new ArrayList<String>();
+				for (COSName state : ((COSDictionary)normal).keySet()) {
+					states.add(state.getName());
+				}
+				Collections.sort(states);
+				updateString(digest, states.toString());
+			} else {
+				updateString(digest, "");
+			}
+			// attributes of the widget and the fields it belongs to
+			COSDictionary field = widget;
+			for (int depth = 0; field != null && depth < MAX_FIELD_DEPTH; depth++) {
+				for (COSName key : FIELD_KEYS) {
+					COSBase value = field.getDictionaryObject(key);
+					updateString(digest, key.getName());
+					updateString(digest, toString(value));
+				}
+				COSBase parent = field.getDictionaryObject(COSName.PARENT);
+				field = parent instanceof COSDictionary ? (COSDictionary)parent : null;
+			}
+		}
+	}
+
+	private static String toString(COSBase value) {
+		if (value == null) {
+			return "null";
+		} else if (value instanceof COSString) {
+			return ((COSString)value).getString();
+		} else if (value instanceof COSName) {
+			return ((COSName)value).getName();
+		} else if (value instanceof COSNumber) {
+			return String.valueOf(((COSNumber)value).floatValue());
+		} else if (value instanceof COSArray) {
+			COSArray array = (COSArray)value;
+			StringBuilder sb = new StringBuilder("[");
+			for (int i = 0; i < array.size(); i++) {
+				sb.append(toString(array.getObject(i))).append(' ');
+			}
+			return sb.append(']').toString();
+		}
+		return value.getClass().getSimpleName();
+	}
+
+	private static void updateString(MessageDigest digest, String value) {
+		digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+	}
+
+	private static void updateFloat(MessageDigest digest, float value) {
+		updateInt(digest, Float.floatToIntBits(value));
+	}
+
+	private static void updateInt(MessageDigest digest, int value) {
+		digest.update((byte)(value >>> 24));
+		digest.update((byte)(value >>> 16));
+		digest.update((byte)(value >>> 8));
+		digest.update((byte)value);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,148 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+
+/**
+ * RandomAccessRead over a memory-mapped pdf file. Content of the file is paged in by the operating system and is not
+ * copied to the java heap. Each reader has its own position, so several readers may share the same mapped buffers.
+ * A mapped buffer is limited to 2GB, so larger files are mapped as several chunks of the same size.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class MappedRandomAccessRead implements RandomAccessRead {
+	private final ByteBuffer[] chunks;
+	private final long chunkSize;
+	private final long length;
+	private long position = 0;
+	private boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chunks mapped content of the file in order. All chunks except the last must have the same size.
+	 *               Buffers are duplicated so positions of the arguments are not changed.
+	 */
+	public MappedRandomAccessRead(ByteBuffer... chunks) {
+		this.chunks = new ByteBuffer[chunks.length];
+		long totalLength = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			this.chunks[i] = chunks[i].duplicate();
+			totalLength += chunks[i].limit();
+		}
+		this.chunkSize = chunks.length > 0 ? Math.max(1, chunks[0].limit()) : 1;
+		this.length = totalLength;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		if (position >= length) {
+			return -1;
+		}
+		int b = chunks[(int)(position / chunkSize)].get((int)(position % chunkSize)) & 0xff;
+		position++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	@Override
+	public int read(byte[] b, int offset, int length) throws IOException {
+		checkClosed();
+		if (position >= this.length) {
+			return -1;
+		}
+		int numRead = (int)Math.min(length, this.length - position);
+		int done = 0;
+		while (done < numRead) {
+			ByteBuffer chunk = chunks[(int)(position / chunkSize)];
+			chunk.position((int)(position % chunkSize));
+			int n = Math.min(numRead - done, chunk.remaining());
+			chunk.get(b, offset + done, n);
+			done += n;
+			position += n;
+		}
+		return numRead;
+	}
+
+	@Override
+	public long getPosition() throws IOException {
+		checkClosed();
+		return position;
+	}
+
+	@Override
+	public void seek(long position) throws IOException {
+		checkClosed();
+		if (position < 0) {
+			throw new IOException("Invalid position " + position);
+		}
+		this.position = Math.min(position, length);
+	}
+
+	@Override
+	public long length() throws IOException {
+		checkClosed();
+		return length;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public int peek() throws IOException {
+		checkClosed();
+		if (position >= length) {
+			return -1;
+		}
+		return chunks[(int)(position / chunkSize)].get((int)(position % chunkSize)) & 0xff;
+	}
+
+	@Override
+	public void rewind(int bytes) throws IOException {
+		checkClosed();
+		position -= bytes;
+	}
+
+	@Override
+	public byte[] readFully(int length) throws IOException {
+		checkClosed();
+		if (length > this.length - position) {
+			throw new IOException("Premature end of buffer reached");
+		}
+		byte[] bytes = new byte[length];
+		read(bytes, 0, length);
+		return bytes;
+	}
+
+	@Override
+	public boolean isEOF() throws IOException {
+		checkClosed();
+		return position >= length;
+	}
+
+	@Override
+	public int available() throws IOException {
+		checkClosed();
+		return (int)Math.min(Integer.MAX_VALUE, length - position);
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+	}
+
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException("MappedRandomAccessRead already closed");
+		}
+	}
+}
@@ -0,0 +1,404 @@
+package com.hozawa.pdf2jrxml;
+
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.fontbox.util.BoundingBox;
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDCIDFont;
+import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType3Font;
+import org.apache.pdfbox.pdmodel.font.encoding.GlyphList;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
+import org.apache.pdfbox.text.TextPosition;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+/**
+ * Extract text, images and lines from a pdf page in a single pass of the page content stream.
+ * Glyphs are passed to PDFTextStripperCustom to be grouped into text strings.
+ * An engine is not thread-safe but holds no shared state, so each thread may use its own engine. An engine may be
+ * reused for pages of any document. Results of a page are valid until the next page is processed or reset() is called.
+ * The text stripper and the attributes of fonts are reused for all pages of a document until release() is called or a
+ * page of another document is processed.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class PDFContentEngine extends PDFGraphicsStreamEngine {
+	private static final GlyphList GLYPH_LIST = loadGlyphList();
+
+	private final PDFTextStripperCustom textStripper;
+	private PDDocument document;	// document of the pages being processed. fonts are kept while it is the same
+	private final List<ImagePlacement> imageList = new ArrayList<ImagePlacement>();
+	private final List<PathSegment> lineList = new ArrayList<PathSegment>();
+	private ImageCache imageCache;
+
+	private final GeneralPath linePath = new GeneralPath();
+    private int clipWindingRule = -1;
+
+    private COSName xobjectName;	// name of XObject being drawn by Do operator
+
+    // page geometry used to position glyphs
+    private int pageRotation;
+    private PDRectangle pageSize;
+    private Matrix translateMatrix;
+
+    /**
+     * Constructor. Engine can be reused to process other pages.
+     *
+     * @throws IOException
+     */
+    public PDFContentEngine() throws IOException {
+        this(null);
+    }
+
+    public PDFContentEngine(PDPage page) throws IOException {
+        super(page);
+        textStripper = new PDFTextStripperCustom();
+        textStripper.setSortByPosition(true);
+    }
+
+    /**
+     * Set document of the pages to process. Attributes of fonts of the previous document are released when the
+     * document changes.
+     *
+     * @param document document of the pages to process.
+     */
+    public void setDocument(PDDocument document) {
+        if (document != this.document) {
+            textStripper.releaseFonts();
+            this.document = document;
+        }
+    }
+
+    /**
+     * Release results of the processed page. Fonts are kept for later pages of the same document.
+     */
+    public void reset() {
+        clearPage();
+        textStripper.reset();
+        imageCache = null;
+    }
+
+    /**
+     * Release results of the processed page, fonts and the document so that the engine can be kept for later
+     * documents without holding on to the document.
+     */
+    public void release() {
+        reset();
+        textStripper.releaseFonts();
+        document = null;
+    }
+
+    private void clearPage() {
+        imageList.clear();
+        lineList.clear();
+        linePath.reset();
+        clipWindingRule = -1;
+        xobjectName = null;
+    }
+
+    /**
+     * Load glyph list used to map glyph names to unicode. Same list as used by PDFTextStripper.
+     *
+     * @return glyph list.
+     */
+    private static GlyphList loadGlyphList() {
+    	try (InputStream input = GlyphList.class.getResourceAsStream("/org/apache/pdfbox/resources/glyphlist/additional.txt")) {
+    		return new GlyphList(GlyphList.getAdobeGlyphList(), input);
+    	} catch (IOException e) {
+    		return GlyphList.getAdobeGlyphList();
+    	}
+    }
+
+    @Override
+    public void processPage(PDPage page) throws IOException {
+        clearPage();
+        pageRotation = page.getRotation();
+        pageSize = page.getCropBox();
+        if (pageSize.getLowerLeftX() == 0 && pageSize.getLowerLeftY() == 0) {
+            translateMatrix = null;
+        } else {
+            translateMatrix = Matrix.getTranslateInstance(-pageSize.getLowerLeftX(), -pageSize.getLowerLeftY());
+        }
+        textStripper.beginPage();
+        super.processPage(page);
+        textStripper.endPage();
+    }
+
+    @Override
+    protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+        if ("Do".equals(operator.getName()) && !operands.isEmpty() && operands.get(0) instanceof COSName) {
+            xobjectName = (COSName)operands.get(0);
+        }
+        super.processOperator(operator, operands);
+        xobjectName = null;
+    }
+
+    /**
+     * Create TextPosition of a glyph in the same way as PDFTextStripper and pass it on to the text stripper.
+     */
+    @Override
+    protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, String unicode, Vector displacement) throws IOException {
+        PDGraphicsState state = getGraphicsState();
+        Matrix ctm = state.getCurrentTransformationMatrix();
+        float fontSize = state.getTextState().getFontSize();
+        float horizontalScaling = state.getTextState().getHorizontalScaling() / 100f;
+        Matrix textMatrix = getTextMatrix();
+
+        // glyph height
+        BoundingBox bbox = font.getBoundingBox();
+        if (bbox.getLowerLeftY() < Short.MIN_VALUE) {
+            bbox.setLowerLeftY(- (bbox.getLowerLeftY() + 65536));
+        }
+        float glyphHeight = bbox.getHeight() / 2;
+        PDFontDescriptor fontDescriptor = font.getFontDescriptor();
+        if (fontDescriptor != null) {
+            float capHeight = fontDescriptor.getCapHeight();
+            if (Float.compare(capHeight, 0) != 0 && (capHeight < glyphHeight || Float.compare(glyphHeight, 0) == 0)) {
+                glyphHeight = capHeight;
+            }
+            float ascent = fontDescriptor.getAscent();
+            float descent = fontDescriptor.getDescent();
+            if (ascent > 0 && descent < 0 && ((ascent - descent) / 2 < glyphHeight || Float.compare(glyphHeight, 0) == 0)) {
+                glyphHeight = (ascent - descent) / 2;
+            }
+        }
+        float height;
+        if (font instanceof PDType3Font) {
+            height = font.getFontMatrix().transformPoint(0, glyphHeight).y;
+        } else {
+            height = glyphHeight / 1000;
+        }
+
+        // glyph width
+        float displacementX = displacement.getX();
+        if (font.isVertical()) {
+            displacementX = font.getWidth(code) / 1000;
+            TrueTypeFont ttf = null;
+            if (font instanceof PDTrueTypeFont) {
+                 ttf = ((PDTrueTypeFont)font).getTrueTypeFont();
+            } else if (font instanceof PDType0Font) {
+                PDCIDFont cidFont = ((PDType0Font)font).getDescendantFont();
+                if (cidFont instanceof PDCIDFontType2) {
+                    ttf = ((PDCIDFontType2)cidFont).getTrueTypeFont();
+                }
+            }
+            if (ttf != null && ttf.getUnitsPerEm() != 1000) {
+                displacementX *= 1000f / ttf.getUnitsPerEm();
+            }
+        }
+        float tx = displacementX * fontSize * horizontalScaling;
+        float ty = displacement.getY() * fontSize;
+        Matrix nextTextRenderingMatrix = Matrix.getTranslateInstance(tx, ty).multiply(textMatrix).multiply(ctm);
+        float nextX = nextTextRenderingMatrix.getTranslateX();
+        float nextY = nextTextRenderingMatrix.getTranslateY();
+        float dxDisplay = nextX - textRenderingMatrix.getTranslateX();
+        float dyDisplay = height * textRenderingMatrix.getScalingFactorY();
+
+        // width of a space
+        float glyphSpaceToTextSpaceFactor = 1 / 1000f;
+        if (font instanceof PDType3Font) {
+            glyphSpaceToTextSpaceFactor = font.getFontMatrix().getScaleX();
+        }
+        float spaceWidthText = 0;
+        try {
+            spaceWidthText = font.getSpaceWidth() * glyphSpaceToTextSpaceFactor;
+        } catch (Throwable exception) {
+            // use average font width below
+        }
+        if (spaceWidthText == 0) {
+            spaceWidthText = font.getAverageFontWidth() * glyphSpaceToTextSpaceFactor * 0.80f;
+        }
+        if (spaceWidthText == 0) {
+            spaceWidthText = 1.0f;
+        }
+        float spaceWidthDisplay = spaceWidthText * textRenderingMatrix.getScalingFactorX();
+
+        unicode = font.toUnicode(code, GLYPH_LIST);
+        if (unicode == null) {
+            if (font instanceof PDSimpleFont) {
+                unicode = new String(new char[] { (char) code });
+            } else {
+                return;	// glyph without unicode mapping is not text
+            }
+        }
+
+        Matrix translatedTextRenderingMatrix;
+        if (translateMatrix == null) {
+            translatedTextRenderingMatrix = textRenderingMatrix;
+        } else {
+            translatedTextRenderingMatrix = Matrix.concatenate(translateMatrix, textRenderingMatrix);
+            nextX -= pageSize.getLowerLeftX();
+            nextY -= pageSize.getLowerLeftY();
+        }
+
+        textStripper.addTextPosition(new TextPosition(pageRotation, pageSize.getWidth(), pageSize.getHeight(),
+        		translatedTextRenderingMatrix, nextX, nextY, Math.abs(dyDisplay), dxDisplay, Math.abs(spaceWidthDisplay),
+        		unicode, new int[] { code } , font, fontSize, (int)(fontSize * textMatrix.getScalingFactorX())),
+        		state.getNonStrokingColor());
+    }
+
+    @Override
+    public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException {
+        // to ensure that the path is created in the right direction, we have to create
+        // it by combining single lines instead of creating a simple rectangle
+        linePath.moveTo((float) p0.getX(), (float) p0.getY());
+        linePath.lineTo((float) p1.getX(), (float) p1.getY());
+        linePath.lineTo((float) p2.getX(), (float) p2.getY());
+        linePath.lineTo((float) p3.getX(), (float) p3.getY());
+
+        // close the subpath instead of adding the last line so that a possible set line
+        // cap style isn't taken into account at the "beginning" of the rectangle
+        linePath.closePath();
+    }
+
+    @Override
+    public void drawImage(PDImage pdi) throws IOException {
+        if (!(pdi instanceof PDImageXObject) || xobjectName == null) {
+            return;	// inline images are not extracted
+        }
+        PDImageXObject image = (PDImageXObject)pdi;
+        Matrix ctmNew = getGraphicsState().getCurrentTransformationMatrix();
+        float imageXScale = ctmNew.getScalingFactorX();
+        float imageYScale = ctmNew.getScalingFactorY();
+
+        if (imageCache == null) {
+        	throw new IllegalStateException("image cache is not set");
+        }
+        ImageCache.ImageFile imageFile = imageCache.getImageFile(image);
+
+        imageList.add(new ImagePlacement(imageFile.getFilename(), imageFile.getSaved(),
+     		   ctmNew.getTranslateX(),
+     		   ctmNew.getTranslateY(),
+     		   imageXScale,
+     		   imageYScale
+     		   ));
+    }
+
+    @Override
+    public void clip(int windingRule) throws IOException {
+        // the clipping path will not be updated until the succeeding painting operator is called
+        clipWindingRule = windingRule;
+    }
+
+    @Override
+    public void moveTo(float x, float y) throws IOException {
+        linePath.moveTo(x, y);
+    }
+
+    @Override
+    public void lineTo(float x, float y) throws IOException {
+        linePath.lineTo(x, y);
+    }
+
+    @Override
+    public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) throws IOException {
+        linePath.curveTo(x1, y1, x2, y2, x3, y3);
+    }
+
+    @Override
+    public Point2D getCurrentPoint() throws IOException {
+        return linePath.getCurrentPoint();
+    }
+
+    @Override
+    public void closePath() throws IOException {
+        linePath.closePath();
+    }
+
+    @Override
+    public void endPath() throws IOException {
+        if (clipWindingRule != -1) {
+            linePath.setWindingRule(clipWindingRule);
+            getGraphicsState().intersectClippingPath(linePath);
+            clipWindingRule = -1;
+        }
+        linePath.reset();
+
+    }
+
+    @Override
+    public void strokePath() throws IOException {
+        Rectangle2D rect = linePath.getBounds2D();
+
+        boolean isRect = false;
+
+        double[] coords = new double[6];
+        for (PathIterator pi = linePath.getPathIterator(null); ! pi.isDone(); pi.next()) {
+            if (pi.currentSegment(coords) == PathIterator.SEG_CLOSE) {
+            	isRect = true;
+            	break;
+            }
+        }
+        lineList.add(new PathSegment((float) rect.getX(),
+     		   (float) rect.getY(),
+     		   (float) rect.getWidth(),
+     		   (float) rect.getHeight(),
+     		   isRect
+     		   ));
+
+        linePath.reset();
+    }
+
+    @Override
+    public void fillPath(int windingRule) throws IOException {
+        linePath.reset();
+    }
+
+    @Override
+    public void fillAndStrokePath(int windingRule) throws IOException {
+        linePath.reset();
+    }
+
+    @Override
+    public void shadingFill(COSName cosn) throws IOException {
+    }
+
+    /**
+     * Set cache of saved images. Must be set before processing a page with images.
+     * Images already in the cache are not saved again.
+     *
+     * @param imageCache cache of images in the image directory.
+     */
+    public void setImageCache(ImageCache imageCache) {
+    	this.imageCache = imageCache;
+    }
+
+    /**
+     * Return text strings in the page grouped by PDFTextStripperCustom. Page must be processed before calling this method.
+     *
+     * @return text strings with their position and font.
+     */
+    public List<TextRun> getTextRuns() {
+    	return textStripper.getTextRuns();
+    }
+
+    public List<ImagePlacement> getImageInfo() {
+    	return this.imageList;
+    }
+
+    public List<PathSegment> getLineInfo() {
+    	return this.lineList;
+    }
+}
@@ -1,88 +1,205 @@
 package com.hozawa.pdf2jrxml;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
-import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingColor;
-import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingColorSpace;
-import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingDeviceCMYKColor;
-import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingDeviceGrayColor;
-import org.apache.pdfbox.contentstream.operator.color.SetNonStrokingDeviceRGBColor;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.text.TextPosition;
 
+/**
+ * Text stripper that groups characters found by PDFContentEngine into text strings with their font and color.
+ * A stripper is reused for all pages processed by a thread. PDFTextStripper only clears its table of drawn characters,
+ * used to suppress duplicated text, when it processes the page itself, so duplicated text is suppressed by this class
+ * with its own table that is cleared for each page. Attributes of fonts are kept until releaseFonts() is called,
+ * so fonts shared by the pages of a document are read once.
+ */
 public class PDFTextStripperCustom extends PDFTextStripper {
-	private List<Map<String, Object>> charList = new ArrayList<Map<String, Object>>();	// hold character color
+	private final ColorTrack colorTrack = new ColorTrack();	// color of each character
+	private PDColor lastColor;	// color converted to lastRgb
+	private int lastRgb;
+	private List<TextRun> textRuns = new ArrayList<TextRun>();	// text strings in page
+	private final Map<PDFont, FontInfo> fontInfos = new IdentityHashMap<PDFont, FontInfo>();	// attributes of fonts used in document
+	private boolean suppressDuplicates = true;
+	private final Map<String, TreeMap<Float, TreeSet<Float>>> drawnCharacters = new HashMap<String, TreeMap<Float, TreeSet<Float>>>();	// character -> x -> y drawn in page
 
 	public PDFTextStripperCustom() throws IOException {
-		//super();
-//        addOperator(new SetStrokingColorSpace());
-        addOperator(new SetNonStrokingColorSpace());
-//        addOperator(new SetStrokingDeviceCMYKColor());
-        addOperator(new SetNonStrokingDeviceCMYKColor());
-        addOperator(new SetNonStrokingDeviceRGBColor());
-//        addOperator(new SetStrokingDeviceRGBColor());
-        addOperator(new SetNonStrokingDeviceGrayColor());
-//        addOperator(new SetStrokingDeviceGrayColor());
-//        addOperator(new SetStrokingColor());
-//        addOperator(new SetStrokingColorN());
-        addOperator(new SetNonStrokingColor());
-//        addOperator(new SetNonStrokingColorN());
+		super.setSuppressDuplicateOverlappingText(false);	// suppressed by isDuplicate() with a table cleared for each page
 	}
 
     @Override
-    protected void processTextPosition(TextPosition text)
-    {
+    public void setSuppressDuplicateOverlappingText(boolean suppressDuplicateOverlappingText) {
+        suppressDuplicates = suppressDuplicateOverlappingText;
+    }
+    
+    @Override
+    public boolean getSuppressDuplicateOverlappingText() {
+        return suppressDuplicates;
+    }
+    
+    /**
+     * Convert color to packed RGB. Color is usually unchanged between characters, so the last conversion is reused.
+     * 
+     * @param color color in any color space.
+     * @return packed RGB color (0xRRGGBB). Black if color could not be converted.
+     */
+    private int toRGB(PDColor color) {
+    	if (color != lastColor) {
+    		try {
+    			lastRgb = color.toRGB();
+    		} catch (IOException | RuntimeException e) {
+    			lastRgb = 0;
+    		}
+    		lastColor = color;
+    	}
+    	return lastRgb;
+    }
+    
+    /**
+     * Return true if the same character was already drawn at almost the same position in the page.
+     * Some pdf files draw text several times with a small offset to make it look bold. Same check as PDFTextStripper.
+     * 
+     * @param text character and its position.
+     * @return true if the character should not be added.
+     */
+    private boolean isDuplicate(TextPosition text) {
+        if (!suppressDuplicates) {
+            return false;
+        }
+        String textCharacter = text.getUnicode();
+        float textX = text.getX();
+        float textY = text.getY();
+        TreeMap<Float, TreeSet<Float>> sameTextCharacters = drawnCharacters.get(textCharacter);
+        if (sameTextCharacters == null) {
+            sameTextCharacters = new TreeMap<Float, TreeSet<Float>>();
+            drawnCharacters.put(textCharacter, sameTextCharacters);
+        }
+        float tolerance = text.getWidth() / textCharacter.length() / 3.0f;
+        SortedMap<Float, TreeSet<Float>> xMatches = sameTextCharacters.subMap(textX - tolerance, textX + tolerance);
+        for (TreeSet<Float> xMatch : xMatches.values()) {
+            if (!xMatch.subSet(textY - tolerance, textY + tolerance).isEmpty()) {
+                return true;
+            }
+        }
+        TreeSet<Float> ySet = sameTextCharacters.get(textX);
+        if (ySet == null) {
+            ySet = new TreeSet<Float>();
+            sameTextCharacters.put(textX, ySet);
+        }
+        ySet.add(textY);
+        return false;
+    }
+    
+    /**
+     * Prepare to receive characters of a page from PDFContentEngine.
+     */
+    void beginPage() {
+    	setShouldSeparateByBeads(false);
+    	charactersByArticle.clear();
+    	charactersByArticle.add(new ArrayList<TextPosition>());
+    	drawnCharacters.clear();
+    	colorTrack.clear();
+    	lastColor = null;
+    	textRuns.clear();
+    }
+    
+    /**
+     * Release text strings and colors of the last page. Fonts are kept for later pages of the same document.
+     */
+    void reset() {
+    	beginPage();
+    	charactersByArticle.clear();
+    }
+    
+    /**
+     * Release attributes of fonts so that fonts of a closed document are not kept.
+     */
+    void releaseFonts() {
+    	fontInfos.clear();
+    }
+    
+    /**
+     * Add a character found by PDFContentEngine.
+     * 
+     * @param text character and its position.
+     * @param nonStrokingColor color of the character.
+     */
+    void addTextPosition(TextPosition text, PDColor nonStrokingColor) {
+        if (isDuplicate(text)) {
+            return;
+        }
         super.processTextPosition(text);
-
-        //PDColor strokingColor = getGraphicsState().getStrokingColor();
-        PDColor nonStrokingColor = getGraphicsState().getNonStrokingColor();
-        String unicode = text.getUnicode();
-        Map<String, Object> charMap = new HashMap<String, Object>();
-        charMap.put("char", unicode);
-        charMap.put("color", nonStrokingColor);
-        charList.add(charMap);
+        colorTrack.add(text, toRGB(nonStrokingColor));
+    }
+    
+    /**
+     * Group characters added since beginPage() into text strings. Text strings are returned by getTextRuns().
+     * 
+     * @throws IOException
+     */
+    void endPage() throws IOException {
+    	output = new StringWriter();	// separators are written to output and discarded
+    	writePage();
+    	output = null;
     }
     
     @Override
     protected void writeString(String string, List<TextPosition> textPositions) throws IOException{
         TextPosition text = textPositions.get(0);
+        FontInfo fontInfo = getFontInfo(text.getFont());
 
-        float width;
-        try {
-        	width = text.getFont().getStringWidth(string) / 1000 * text.getFontSize();
-        } catch (IllegalArgumentException e) {
-        	PDFont font = PDType1Font.TIMES_ROMAN;
-        	width = font.getStringWidth(string) / 1000 * text.getFontSize() * 1.5f;
+        // extent of glyphs on the page. Widths from the font are used when glyph positions have no width
+        TextPosition last = textPositions.get(textPositions.size() - 1);
+        float width = last.getXDirAdj() + last.getWidthDirAdj() - text.getXDirAdj();
+        if (width <= 0) {
+        	width = fontInfo.getWidth(textPositions) / 1000 * text.getFontSize();
         }
-        float height = (text.getFont().getFontDescriptor().getCapHeight()) / 1000 * text.getFontSize();
+        float height = fontInfo.getCapHeight() / 1000 * text.getFontSize();
         
-        writeString(String.format("%s,%s,%f,%f,%s,%f,%f,%b,%b,%b,%s", text.getXDirAdj(),
+        textRuns.add(new TextRun(text.getXDirAdj(),
         		text.getYDirAdj(),
         		width,
         		height,
-        		text.getFont().getName(),
+        		fontInfo.getDisplayName(),
         		text.getFontSizeInPt(),
-        		text.getFont().getFontDescriptor().getFontWeight(),
-        		text.getFont().getName().toLowerCase().contains("bold"),
-        		text.getFont().getFontDescriptor().isForceBold(),
-        		text.getFont().getFontDescriptor().isItalic(),
+        		fontInfo.getFontWeight(),
+        		fontInfo.isBold(),
+        		fontInfo.isForceBold(),
+        		fontInfo.isItalic(),
+        		colorTrack.get(text),	// color of first character in string
         		string));
-
     }
     
     /**
-     * Return color of characters.
+     * Return attributes of the font. Attributes are read once for each font object.
+     * 
+     * @param font font of characters.
+     * @return attributes of the font.
+     */
+    private FontInfo getFontInfo(PDFont font) {
+    	FontInfo fontInfo = fontInfos.get(font);
+    	if (fontInfo == null) {
+    		fontInfo = new FontInfo(font);
+    		fontInfos.put(font, fontInfo);
+    	}
+    	return fontInfo;
+    }
+    
+    /**
+     * Return text strings found in page.
      * 
-     * @return color of characters.
+     * @return text strings with their position and font.
      */
-    public List<Map<String, Object>> getCharList() {
-    	return this.charList;
+    public List<TextRun> getTextRuns() {
+    	return this.textRuns;
     }
 }
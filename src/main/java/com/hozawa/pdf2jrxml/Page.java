@@ -1,7 +1,10 @@
 package com.hozawa.pdf2jrxml;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.apache.pdfbox.pdmodel.PDPage;
 
@@ -14,9 +17,18 @@ import net.sf.jasperreports.engine.design.JRDesignElement;
  */
 public class Page {
 	private PDPage page;
+	private int pageNo;
 	private List<JRDesignElement> elementList;
 	private String title;
 	private Map<String, Object> fields;
+	private List<String> imageFiles = new ArrayList<String>();
+	private List<Future<Void>> pendingImages = new ArrayList<Future<Void>>();
+	private StyleTable styleTable = new StyleTable();
+	private String contentKey;
+	private String cacheKey;
+	private File cachedJrxml;
+	private String layoutKey;
+	private byte[] layoutJrxml;
 	
 	// page
 	public void setPage(PDPage page) {
@@ -26,6 +38,14 @@ public class Page {
 		return this.page;
 	}
 	
+	// pageNo
+	public void setPageNo(int pageNo) {
+		this.pageNo = pageNo;
+	}
+	public int getPageNo() {
+		return this.pageNo;
+	}
+	
 	// elementList
 	public void setElementList(List<JRDesignElement> elementList) {
 		this.elementList = elementList;
@@ -55,4 +75,65 @@ public class Page {
 	public Map<String, Object> getFields() {
 		return this.fields;
 	}
+	
+	// styleTable (styles shared by text elements)
+	public StyleTable getStyleTable() {
+		return this.styleTable;
+	}
+	
+	// imageFiles (paths of image files referred to by elements)
+	public void addImageFile(String imageFile) {
+		this.imageFiles.add(imageFile);
+	}
+	public List<String> getImageFiles() {
+		return this.imageFiles;
+	}
+	
+	// pendingImages (futures of image files saved in background. jrxml is written after they are saved)
+	public void addPendingImage(Future<Void> saved) {
+		this.pendingImages.add(saved);
+	}
+	public List<Future<Void>> getPendingImages() {
+		return this.pendingImages;
+	}
+	
+	// contentKey (hash of page content. null if page cache and layout cache are not used)
+	public void setContentKey(String contentKey) {
+		this.contentKey = contentKey;
+	}
+	public String getContentKey() {
+		return this.contentKey;
+	}
+	
+	// cacheKey (key in page cache. null if page cache is not used)
+	public void setCacheKey(String cacheKey) {
+		this.cacheKey = cacheKey;
+	}
+	public String getCacheKey() {
+		return this.cacheKey;
+	}
+	
+	// cachedJrxml (jrxml file in page cache. null if page was converted)
+	public void setCachedJrxml(File cachedJrxml) {
+		this.cachedJrxml = cachedJrxml;
+	}
+	public File getCachedJrxml() {
+		return this.cachedJrxml;
+	}
+	
+	// layoutKey (fingerprint of page layout. null if layout cache is not used)
+	public void setLayoutKey(String layoutKey) {
+		this.layoutKey = layoutKey;
+	}
+	public String getLayoutKey() {
+		return this.layoutKey;
+	}
+	
+	// layoutJrxml (jrxml generated from a page with the same layout. null if page was converted)
+	public void setLayoutJrxml(byte[] layoutJrxml) {
+		this.layoutJrxml = layoutJrxml;
+	}
+	public byte[] getLayoutJrxml() {
+		return this.layoutJrxml;
+	}
 }
@@ -0,0 +1,141 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of jrxml files generated from pdf pages. A page is identified by the hash of its content computed by PageHasher.
+ * Pages that have not changed since the last run are copied from the cache instead of being converted again.
+ * Cached pages are listed in a manifest file in the cache directory with the image files the jrxml refers to.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class PageCache {
+	private static final String MANIFEST_FILENAME = "manifest.properties";
+	private static final String IMAGE_SEPARATOR = "|";
+
+	private final File cacheDir;
+	private final File manifestFile;
+	private final Map<String, List<String>> entries = new ConcurrentHashMap<String, List<String>>();	// key -> image files
+
+	/**
+	 * Constructor. Load cached pages from the manifest file.
+	 *
+	 * @param cacheDir directory to store cached jrxml files.
+	 */
+	public PageCache(String cacheDir) {
+		this.cacheDir = new File(cacheDir);
+		this.manifestFile = new File(this.cacheDir, MANIFEST_FILENAME);
+		loadManifest();
+	}
+
+	/**
+	 * Return cached jrxml file of the page.
+	 *
+	 * @param key cache key of the page.
+	 * @return cached jrxml file. null if not cached or if an image it refers to no longer exists.
+	 */
+	public File lookup(String key) {
+		List<String> imageFiles = entries.get(key);
+		if (imageFiles == null) {
+			return null;
+		}
+		File jrxmlFile = new File(cacheDir, key + ".jrxml");
+		if (!jrxmlFile.isFile()) {
+			return null;
+		}
+		for (String imageFile : imageFiles) {
+			if (!new File(imageFile).isFile()) {
+				return null;
+			}
+		}
+		return jrxmlFile;
+	}
+
+	/**
+	 * Store generated jrxml file in the cache.
+	 *
+	 * @param key cache key of the page.
+	 * @param jrxmlFile generated jrxml file.
+	 * @param imageFiles paths of image files referred to by the jrxml.
+	 * @throws IOException when jrxml could not be copied to the cache.
+	 */
+	public void store(String key, File jrxmlFile, List<String> imageFiles) throws IOException {
+		if (!cacheDir.exists()) {
+			cacheDir.mkdirs();
+		}
+		File cachedFile = new File(cacheDir, key + ".jrxml");
+		File tempFile = File.createTempFile(key, ".tmp", cacheDir);
+		Files.copy(jrxmlFile.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Files.move(tempFile.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		List<String> images = Collections.unmodifiableList(new ArrayList<String>(imageFiles));
+		if (entries.put(key, images) == null) {
+			addToManifest(key, images);
+		}
+	}
+
+	/**
+	 * Load manifest file. Entries whose jrxml file no longer exists are ignored.
+	 */
+	private void loadManifest() {
+		if (!manifestFile.exists()) {
+			return;
+		}
+		Properties manifest = new Properties();
+		try (InputStream is = new BufferedInputStream(new FileInputStream(manifestFile))) {
+			manifest.load(is);
+		} catch (IOException e) {
+			System.out.println("page cache manifest file could not be read. Pages will be converted again.");
+			return;
+		}
+		for (String key : manifest.stringPropertyNames()) {
+			if (new File(cacheDir, key + ".jrxml").isFile()) {
+				String value = manifest.getProperty(key);
+				List<String> images = value.isEmpty() ? Collections.<String>emptyList()
+						: Arrays.asList(value.split("\\" + IMAGE_SEPARATOR));
+				entries.put(key, images);
+			}
+		}
+	}
+
+	/**
+	 * Append an entry to the manifest file.
+	 */
+	private synchronized void addToManifest(String key, List<String> imageFiles) throws IOException {
+		Properties entry = new Properties();
+		StringBuilder value = new StringBuilder();
+		for (String imageFile : imageFiles) {
+			if (value.length() > 0) {
+				value.append(IMAGE_SEPARATOR);
+			}
+			value.append(imageFile);
+		}
+		entry.setProperty(key, value.toString());
+		StringWriter line = new StringWriter();
+		entry.store(line, null);
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(manifestFile, true), StandardCharsets.ISO_8859_1)) {
+			for (String text : line.toString().split("\\R")) {
+				if (!text.startsWith("#")) {
+					writer.write(text + "\n");	// escaped by Properties, without the date comment
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Hash of the content of a pdf page, used as the key of the page cache and to find a cached layout before the page
+ * content is processed. A page is identified by a hash of its content streams, resources, geometry, document title
+ * and form widgets plus a fingerprint of the configuration used to generate the jrxml.
+ * Only the widgets in /Annots of the page are hashed, without their values, so filling in a form does not change the
+ * key and the key of a page does not depend on the fields of other pages. Hash of each stream is kept by the identity
+ * of the stream, so fonts and XObjects shared by the pages of a loaded document are read and hashed once.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class PageHasher {
+	private static final String HASH_ALGORITHM = "SHA-1";
+	private static final String KEY_VERSION = "7";	// change when generated jrxml changes for the same input
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final COSName[] FIELD_KEYS = {COSName.T, COSName.FT, COSName.FF, COSName.Q};	// field entries used to generate text fields
+	private static final int MAX_FIELD_DEPTH = 32;	// maximum number of parent fields of a widget to hash
+
+	private final Map<COSStream, byte[]> streamHashes = Collections.synchronizedMap(new WeakHashMap<COSStream, byte[]>());	// hash of streams of loaded documents
+
+	/**
+	 * Compute hash of the page.
+	 *
+	 * @param config configuration properties
+	 * @param document pdf document.
+	 * @param page page in the document.
+	 * @return hex string of hash.
+	 * @throws IOException when page content could not be read.
+	 */
+	public String getKey(Config config, PDDocument document, PDPage page) throws IOException {
+		MessageDigest digest = createDigest();
+		updateString(digest, KEY_VERSION);
+		updateString(digest, getConfigFingerprint(config));
+		updateString(digest, String.valueOf(document.getDocumentInformation().getTitle()));
+
+		Map<COSBase, Boolean> visited = new IdentityHashMap<COSBase, Boolean>();
+		Map<COSStream, Boolean> hashing = new IdentityHashMap<COSStream, Boolean>();
+		COSDictionary pageDictionary = page.getCOSObject();
+		updateCOS(digest, pageDictionary.getDictionaryObject(COSName.CONTENTS), visited, hashing);
+		updateCOS(digest, page.getResources() != null ? page.getResources().getCOSObject() : null, visited, hashing);
+		updateString(digest, page.getMediaBox().toString() + "/" + page.getRotation());
+		COSDictionary acroForm = document.getDocumentCatalog().getCOSObject().getCOSDictionary(COSName.ACRO_FORM);
+		if (acroForm != null) {
+			updateCOS(digest, acroForm.getDictionaryObject(COSName.Q), visited, hashing);	// default alignment of the fields
+			updateWidgets(digest, pageDictionary.getDictionaryObject(COSName.ANNOTS), hashing);
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Add form widgets in /Annots of the page to hash. Only the entries used to generate text fields are hashed:
+	 * rectangle, appearance state names and name, type, flags and alignment of the widget and its parent fields.
+	 * Values and appearance streams are not hashed.
+	 */
+	private void updateWidgets(MessageDigest digest, COSBase annotations, Map<COSStream, Boolean> hashing) throws IOException {
+		if (!(annotations instanceof COSArray)) {
+			return;
+		}
+		COSArray annotationArray = (COSArray)annotations;
+		for (int i = 0; i < annotationArray.size(); i++) {
+			COSBase annotation = annotationArray.getObject(i);
+			if (!(annotation instanceof COSDictionary)
+					|| !COSName.WIDGET.equals(((COSDictionary)annotation).getDictionaryObject(COSName.SUBTYPE))) {
+				continue;
+			}
+			COSDictionary widget = (COSDictionary)annotation;
+			Map<COSBase, Boolean> visited = new IdentityHashMap<COSBase, Boolean>();
+			updateString(digest, "W" + i);
+			updateCOS(digest, widget.getDictionaryObject(COSName.RECT), visited, hashing);
+			COSBase appearance = widget.getDictionaryObject(COSName.AP);
+			COSBase normal = appearance instanceof COSDictionary ? ((COSDictionary)appearance).getDictionaryObject(COSName.N) : null;
+			if (normal instanceof COSDictionary && !(normal instanceof COSStream)) {
+				List<COSName> states = new ArrayList<COSName>(((COSDictionary)normal).keySet());
+				Collections.sort(states);
+				updateString(digest, "AP" + states);	// on state is the export value of check boxes and radio buttons
+			}
+			COSDictionary field = widget;
+			for (int depth = 0; field != null && depth < MAX_FIELD_DEPTH; depth++) {
+				for (COSName key : FIELD_KEYS) {
+					updateString(digest, "/" + key.getName());
+					updateCOS(digest, field.getDictionaryObject(key), visited, hashing);
+				}
+				COSBase parent = field.getDictionaryObject(COSName.PARENT);
+				field = parent instanceof COSDictionary ? (COSDictionary)parent : null;
+			}
+		}
+	}
+
+	/**
+	 * Return fingerprint of configuration properties that change the generated jrxml.
+	 */
+	static String getConfigFingerprint(Config config) {
+		return config.getMarginLeft() + "," + config.getMarginRight() + "," + config.getMarginTop() + "," + config.getMarginBottom()
+				+ "," + config.getEncoding() + "," + config.getImgDir() + "," + config.getTitle()
+				+ "," + config.getLineMergeTolerance() + "," + config.getTextMergeSpacing();
+	}
+
+	/**
+	 * Add pdf object to hash. Dictionaries are hashed in key order and indirect objects are hashed once.
+	 * Streams are added by their own hash. hashing holds the streams whose hash is being computed to stop at cycles.
+	 */
+	private void updateCOS(MessageDigest digest, COSBase base, Map<COSBase, Boolean> visited, Map<COSStream, Boolean> hashing) throws IOException {
+		if (base instanceof COSObject) {
+			COSBase referenced = ((COSObject)base).getObject();
+			if (referenced != null && visited.put(referenced, Boolean.TRUE) != null) {
+				updateString(digest, "R");	// already hashed. object numbers are not used so that saving the pdf again does not change the hash
+				return;
+			}
+			base = referenced;
+		}
+		if (base == null || base instanceof COSNull) {
+			updateString(digest, "null");
+		} else if (base instanceof COSStream) {
+			COSStream stream = (COSStream)base;
+			if (hashing.containsKey(stream)) {
+				updateString(digest, "R");	// stream refers to itself through its resources
+			} else {
+				digest.update(getStreamHash(stream, hashing));
+			}
+		} else if (base instanceof COSDictionary) {
+			updateDictionary(digest, (COSDictionary)base, visited, hashing);
+		} else if (base instanceof COSArray) {
+			COSArray array = (COSArray)base;
+			updateString(digest, "[" + array.size());
+			for (int i = 0; i < array.size(); i++) {
+				updateCOS(digest, array.get(i), visited, hashing);
+			}
+		} else if (base instanceof COSString) {
+			digest.update(((COSString)base).getBytes());
+		} else if (base instanceof COSName) {
+			updateString(digest, "/" + ((COSName)base).getName());
+		} else if (base instanceof COSNumber || base instanceof COSBoolean) {
+			updateString(digest, base.toString());
+		} else {
+			updateString(digest, base.getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * Return hash of a stream, its dictionary and the objects it refers to. Computed once for each loaded stream.
+	 */
+	private byte[] getStreamHash(COSStream stream, Map<COSStream, Boolean> hashing) throws IOException {
+		byte[] hash = streamHashes.get(stream);
+		if (hash != null) {
+			return hash;
+		}
+		MessageDigest digest = createDigest();
+		hashing.put(stream, Boolean.TRUE);
+		try {
+			updateDictionary(digest, stream, new IdentityHashMap<COSBase, Boolean>(), hashing);
+		} finally {
+			hashing.remove(stream);
+		}
+		byte[] buffer = new byte[8192];
+		try (InputStream in = stream.createRawInputStream()) {
+			int len;
+			while ((len = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, len);
+			}
+		}
+		hash = digest.digest();
+		streamHashes.put(stream, hash);
+		return hash;
+	}
+
+	private void updateDictionary(MessageDigest digest, COSDictionary dictionary, Map<COSBase, Boolean> visited, Map<COSStream, Boolean> hashing) throws IOException {
+		List<COSName> keys = new ArrayList<COSName>(dictionary.keySet());
+		Collections.sort(keys);
+		updateString(digest, "<<" + keys.size());
+		for (COSName key : keys) {
+			if (COSName.PARENT.equals(key) || COSName.P.equals(key)) {
+				continue;	// back references to page tree or page
+			}
+			updateString(digest, "/" + key.getName());
+			updateCOS(digest, dictionary.getItem(key), visited, hashing);
+		}
+	}
+
+	private static MessageDigest createDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static void updateString(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+}
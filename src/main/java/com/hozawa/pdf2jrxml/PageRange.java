@@ -0,0 +1,124 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Pages selected by a list of page numbers and ranges (e.g. "1-5,12,40-"). Page numbers start from 1.
+ * A range without an end (e.g. "40-") continues to the last page and a range without a start (e.g. "-5") starts
+ * from the first page. Overlapping ranges are joined so that each page is selected once, in ascending order.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class PageRange {
+	private static final int OPEN_END = Integer.MAX_VALUE;	// end of range continuing to the last page
+
+	private final String spec;
+	private final List<int[]> ranges = new ArrayList<int[]>();	// {first page, last page} in ascending order, not overlapping
+
+	/**
+	 * Constructor
+	 *
+	 * @param spec comma separated page numbers and ranges.
+	 * @throws IllegalArgumentException when spec is not a valid page selection.
+	 */
+	public PageRange(String spec) {
+		if (spec == null || spec.trim().length() < 1) {
+			throw new IllegalArgumentException("no pages selected");
+		}
+		this.spec = spec.trim();
+		List<int[]> parsed = new ArrayList<int[]>();
+		for (String part : this.spec.split(",")) {
+			part = part.trim();
+			int hyphenPos = part.indexOf('-');
+			int first;
+			int last;
+			if (hyphenPos < 0) {
+				first = parsePageNo(part);
+				last = first;
+			} else {
+				String strFirst = part.substring(0, hyphenPos).trim();
+				String strLast = part.substring(hyphenPos + 1).trim();
+				first = strFirst.length() < 1 ? 1 : parsePageNo(strFirst);
+				last = strLast.length() < 1 ? OPEN_END : parsePageNo(strLast);
+				if (strFirst.length() < 1 && strLast.length() < 1) {
+					throw new IllegalArgumentException("invalid page range: " + part);
+				}
+			}
+			if (first > last) {
+				throw new IllegalArgumentException("invalid page range: " + part);
+			}
+			parsed.add(new int[] {first, last});
+		}
+
+		Collections.sort(parsed, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] range1, int[] range2) {
+				return Integer.compare(range1[0], range2[0]);
+			}
+		});
+		for (int[] range : parsed) {
+			int[] previous = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+			if (previous != null && (previous[1] == OPEN_END || range[0] <= previous[1] + 1)) {
+				previous[1] = Math.max(previous[1], range[1]);
+			} else {
+				ranges.add(range);
+			}
+		}
+	}
+
+	private static int parsePageNo(String strPageNo) {
+		try {
+			int pageNo = Integer.parseInt(strPageNo);
+			if (pageNo < 1) {
+				throw new IllegalArgumentException("page number must start from 1: " + strPageNo);
+			}
+			return pageNo;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid page number: " + strPageNo);
+		}
+	}
+
+	/**
+	 * @return true if every range has an end, so that pages can be listed without knowing the number of pages.
+	 */
+	public boolean isBounded() {
+		return ranges.get(ranges.size() - 1)[1] != OPEN_END;
+	}
+
+	/**
+	 * Return selected pages that exist in a document. Only the selected pages are listed.
+	 *
+	 * @param numPages number of pages in the document.
+	 * @return page numbers (0 origin) in ascending order.
+	 */
+	public List<Integer> getPageNos(int numPages) {
+		List<Integer> pageNos = new ArrayList<Integer>();
+		for (int[] range : ranges) {
+			int last = Math.min(range[1], numPages);
+			for (int pageNo = range[0]; pageNo <= last; pageNo++) {
+				pageNos.add(pageNo - 1);
+			}
+		}
+		return pageNos;
+	}
+
+	/**
+	 * Return selected pages. Range must be bounded.
+	 *
+	 * @return page numbers (0 origin) in ascending order. Pages may not exist in the document.
+	 */
+	public List<Integer> getPageNos() {
+		if (!isBounded()) {
+			throw new IllegalStateException("page range has no end: " + spec);
+		}
+		return getPageNos(OPEN_END);
+	}
+
+	@Override
+	public String toString() {
+		return this.spec;
+	}
+}
@@ -0,0 +1,368 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merge stroked paths that draw the same line. Forms often draw table grids as many short abutting segments,
+ * so collinear horizontal or vertical segments that touch or overlap are joined into a single line.
+ * Lines are joined only when they are within tolerance of the first line of the group, so a chain of slightly
+ * offset segments does not drift further than tolerance from the group.
+ * Duplicated rectangles are removed, and lines lying on an edge of a rectangle are removed because the
+ * rectangle already draws them.
+ * Rectangles are looked up in a grid of buckets so that each segment is only compared with its neighbours.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class PathMerger {
+	private static final float CELL_SIZE = 32f;	// size of grid bucket in points
+
+	private final float tolerance;
+	private int numRemoved = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param tolerance maximum distance in points between segments to merge.
+	 */
+	public PathMerger(float tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Merge segments.
+	 *
+	 * @param segments stroked paths in the page.
+	 * @return merged segments. Order of segments is kept and a joined line takes the place of its first segment.
+	 */
+	public List<PathSegment> merge(List<PathSegment> segments) {
+		final Map<PathSegment, Integer> order = new IdentityHashMap<PathSegment, Integer>();
+		for (int i = 0; i < segments.size(); i++) {
+			order.put(segments.get(i), i);
+		}
+		List<PathSegment> horizontals = new ArrayList<PathSegment>();
+		List<PathSegment> verticals = new ArrayList<PathSegment>();
+		List<PathSegment> rectangles = new ArrayList<PathSegment>();
+		List<PathSegment> others = new ArrayList<PathSegment>();
+		for (PathSegment segment : segments) {
+			if (segment.isRectangle()) {
+				rectangles.add(segment);
+			} else if (segment.getHeight() <= tolerance) {
+				horizontals.add(segment);
+			} else if (segment.getWidth() <= tolerance) {
+				verticals.add(segment);
+			} else {
+				others.add(segment);	// diagonal line
+			}
+		}
+
+		rectangles = removeDuplicateRectangles(rectangles);
+		SegmentGrid rectangleGrid = new SegmentGrid(rectangles);
+		horizontals = removeRectangleEdges(mergeCollinear(horizontals, true, order), rectangleGrid, true);
+		verticals = removeRectangleEdges(mergeCollinear(verticals, false, order), rectangleGrid, false);
+
+		List<PathSegment> merged = new ArrayList<PathSegment>(segments.size());
+		merged.addAll(rectangles);
+		merged.addAll(horizontals);
+		merged.addAll(verticals);
+		merged.addAll(others);
+		Collections.sort(merged, new Comparator<PathSegment>() {
+			@Override
+			public int compare(PathSegment segment1, PathSegment segment2) {
+				return Integer.compare(order.get(segment1), order.get(segment2));
+			}
+		});
+		numRemoved += segments.size() - merged.size();
+		return merged;
+	}
+
+	/**
+	 * @return number of segments removed by merge since this merger was created.
+	 */
+	public int getNumRemoved() {
+		return this.numRemoved;
+	}
+
+	/**
+	 * Join collinear segments that touch or overlap.
+	 * Lines are sorted by their offset (y of horizontal lines, x of vertical lines) and split into bands of lines
+	 * within tolerance of the first line of the band. Lines in a band are sorted by start and joined while they
+	 * touch the running end of the joined line.
+	 *
+	 * @param lines horizontal or vertical lines.
+	 * @param horizontal true if lines are horizontal.
+	 * @param order position of segments in the page. Joined lines are added with the position of their first line.
+	 * @return joined lines.
+	 */
+	private List<PathSegment> mergeCollinear(List<PathSegment> lines, final boolean horizontal, Map<PathSegment, Integer> order) {
+		List<PathSegment> sorted = new ArrayList<PathSegment>(lines);
+		Collections.sort(sorted, new Comparator<PathSegment>() {
+			@Override
+			public int compare(PathSegment line1, PathSegment line2) {
+				return Float.compare(offset(line1, horizontal), offset(line2, horizontal));
+			}
+		});
+		List<PathSegment> merged = new ArrayList<PathSegment>(lines.size());
+		int bandStart = 0;
+		while (bandStart < sorted.size()) {
+			float anchor = offset(sorted.get(bandStart), horizontal);
+			int bandEnd = bandStart + 1;
+			while (bandEnd < sorted.size() && offset(sorted.get(bandEnd), horizontal) - anchor <= tolerance) {
+				bandEnd++;
+			}
+			mergeBand(sorted.subList(bandStart, bandEnd), horizontal, order, merged);
+			bandStart = bandEnd;
+		}
+		return merged;
+	}
+
+	/**
+	 * Join lines in a band that touch or overlap.
+	 *
+	 * @param band lines within tolerance of the same offset.
+	 * @param horizontal true if lines are horizontal.
+	 * @param order position of segments in the page.
+	 * @param merged list to add joined lines to.
+	 */
+	private void mergeBand(List<PathSegment> band, final boolean horizontal, Map<PathSegment, Integer> order, List<PathSegment> merged) {
+		Collections.sort(band, new Comparator<PathSegment>() {
+			@Override
+			public int compare(PathSegment line1, PathSegment line2) {
+				return Float.compare(start(line1, horizontal), start(line2, horizontal));
+			}
+		});
+		float[] bounds = null;	// x0, y0, x1, y1 of the line being joined
+		int firstOrder = 0;	// position of the first line of the joined line in the page
+		for (PathSegment line : band) {
+			float x1 = line.getX() + line.getWidth();
+			float y1 = line.getY() + line.getHeight();
+			if (bounds != null && start(line, horizontal) <= (horizontal ? bounds[2] : bounds[3]) + tolerance) {
+				bounds[0] = Math.min(bounds[0], line.getX());
+				bounds[1] = Math.min(bounds[1], line.getY());
+				bounds[2] = Math.max(bounds[2], x1);
+				bounds[3] = Math.max(bounds[3], y1);
+				firstOrder = Math.min(firstOrder, order.get(line));
+				continue;
+			}
+			if (bounds != null) {
+				addLine(bounds, firstOrder, order, merged);
+			}
+			bounds = new float[] {line.getX(), line.getY(), x1, y1};
+			firstOrder = order.get(line);
+		}
+		if (bounds != null) {
+			addLine(bounds, firstOrder, order, merged);
+		}
+	}
+
+	private static void addLine(float[] bounds, int firstOrder, Map<PathSegment, Integer> order, List<PathSegment> merged) {
+		PathSegment line = new PathSegment(bounds[0], bounds[1], bounds[2] - bounds[0], bounds[3] - bounds[1], false);
+		order.put(line, firstOrder);
+		merged.add(line);
+	}
+
+	private static float offset(PathSegment line, boolean horizontal) {
+		return horizontal ? line.getY() : line.getX();
+	}
+
+	private static float start(PathSegment line, boolean horizontal) {
+		return horizontal ? line.getX() : line.getY();
+	}
+
+	/**
+	 * Remove rectangles with the same bounds as a previous rectangle.
+	 */
+	private List<PathSegment> removeDuplicateRectangles(List<PathSegment> rectangles) {
+		SegmentGrid grid = new SegmentGrid(rectangles);
+		List<PathSegment> unique = new ArrayList<PathSegment>(rectangles.size());
+		for (int i = 0; i < rectangles.size(); i++) {
+			PathSegment rectangle = rectangles.get(i);
+			boolean duplicate = false;
+			int numFound = grid.find(rectangle, tolerance);
+			for (int k = 0; k < numFound; k++) {
+				int j = grid.getFound(k);
+				if (j < i && isSameBounds(rectangle, rectangles.get(j))) {
+					duplicate = true;
+					break;
+				}
+			}
+			if (!duplicate) {
+				unique.add(rectangle);
+			}
+		}
+		return unique;
+	}
+
+	private boolean isSameBounds(PathSegment segment1, PathSegment segment2) {
+		return Math.abs(segment1.getX() - segment2.getX()) <= tolerance
+				&& Math.abs(segment1.getY() - segment2.getY()) <= tolerance
+				&& Math.abs(segment1.getWidth() - segment2.getWidth()) <= tolerance
+				&& Math.abs(segment1.getHeight() - segment2.getHeight()) <= tolerance;
+	}
+
+	/**
+	 * Remove lines that lie on an edge of a rectangle.
+	 */
+	private List<PathSegment> removeRectangleEdges(List<PathSegment> lines, SegmentGrid rectangleGrid, boolean horizontal) {
+		List<PathSegment> remaining = new ArrayList<PathSegment>(lines.size());
+		for (PathSegment line : lines) {
+			boolean onEdge = false;
+			int numFound = rectangleGrid.find(line, tolerance);
+			for (int k = 0; k < numFound; k++) {
+				if (isOnEdge(line, rectangleGrid.get(rectangleGrid.getFound(k)), horizontal)) {
+					onEdge = true;
+					break;
+				}
+			}
+			if (!onEdge) {
+				remaining.add(line);
+			}
+		}
+		return remaining;
+	}
+
+	private boolean isOnEdge(PathSegment line, PathSegment rectangle, boolean horizontal) {
+		if (horizontal) {
+			return (Math.abs(line.getY() - rectangle.getY()) <= tolerance
+						|| Math.abs(line.getY() - (rectangle.getY() + rectangle.getHeight())) <= tolerance)
+					&& line.getX() >= rectangle.getX() - tolerance
+					&& line.getX() + line.getWidth() <= rectangle.getX() + rectangle.getWidth() + tolerance;
+		}
+		return (Math.abs(line.getX() - rectangle.getX()) <= tolerance
+					|| Math.abs(line.getX() - (rectangle.getX() + rectangle.getWidth())) <= tolerance)
+				&& line.getY() >= rectangle.getY() - tolerance
+				&& line.getY() + line.getHeight() <= rectangle.getY() + rectangle.getHeight() + tolerance;
+	}
+
+	/**
+	 * Grid of buckets holding indexes of segments whose bounds overlap the bucket.
+	 * Buckets are kept in flat arrays and found segments are returned in a reused array, so lookups do not allocate.
+	 * Not thread-safe.
+	 */
+	private static class SegmentGrid {
+		private static final int MAX_CELLS = 1 << 16;	// cell size is increased for segments spread over a large area
+
+		private final List<PathSegment> segments;
+		private float cellSize = CELL_SIZE;
+		private int minX;
+		private int minY;
+		private int numCols;
+		private int numRows;
+		private int[] cellStarts;	// index in cellItems of the first segment of each cell. last entry is size of cellItems
+		private int[] cellItems;	// indexes of segments in cell order
+		private int[] found;		// indexes found by the last find
+		private int[] marks;		// stamp of the last find that found the segment
+		private int stamp = 0;
+
+		SegmentGrid(List<PathSegment> segments) {
+			this.segments = segments;
+			this.found = new int[Math.max(16, segments.size())];
+			this.marks = new int[segments.size()];
+			if (segments.isEmpty()) {
+				cellStarts = new int[1];
+				cellItems = new int[0];
+				return;
+			}
+			float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE;
+			for (PathSegment segment : segments) {
+				x0 = Math.min(x0, segment.getX());
+				y0 = Math.min(y0, segment.getY());
+				x1 = Math.max(x1, segment.getX() + segment.getWidth());
+				y1 = Math.max(y1, segment.getY() + segment.getHeight());
+			}
+			while (((double)(x1 - x0) / cellSize + 1) * ((double)(y1 - y0) / cellSize + 1) > MAX_CELLS) {
+				cellSize *= 2;
+			}
+			minX = cell(x0);
+			minY = cell(y0);
+			numCols = cell(x1) - minX + 1;
+			numRows = cell(y1) - minY + 1;
+
+			// count segments in each cell, then fill cells
+			cellStarts = new int[numCols * numRows + 1];
+			for (PathSegment segment : segments) {
+				int cx0 = col(segment.getX()), cx1 = col(segment.getX() + segment.getWidth());
+				int cy0 = row(segment.getY()), cy1 = row(segment.getY() + segment.getHeight());
+				for (int cx = cx0; cx <= cx1; cx++) {
+					for (int cy = cy0; cy <= cy1; cy++) {
+						cellStarts[cx * numRows + cy + 1]++;
+					}
+				}
+			}
+			for (int i = 1; i < cellStarts.length; i++) {
+				cellStarts[i] += cellStarts[i - 1];
+			}
+			cellItems = new int[cellStarts[cellStarts.length - 1]];
+			int[] next = Arrays.copyOf(cellStarts, cellStarts.length - 1);
+			for (int i = 0; i < segments.size(); i++) {
+				PathSegment segment = segments.get(i);
+				int cx0 = col(segment.getX()), cx1 = col(segment.getX() + segment.getWidth());
+				int cy0 = row(segment.getY()), cy1 = row(segment.getY() + segment.getHeight());
+				for (int cx = cx0; cx <= cx1; cx++) {
+					for (int cy = cy0; cy <= cy1; cy++) {
+						cellItems[next[cx * numRows + cy]++] = i;
+					}
+				}
+			}
+		}
+
+		PathSegment get(int index) {
+			return segments.get(index);
+		}
+
+		/**
+		 * Find segments in the buckets overlapping the bounds of the segment expanded by margin.
+		 * Indexes of the found segments are read with getFound() until the next call.
+		 *
+		 * @return number of segments found.
+		 */
+		int find(PathSegment segment, float margin) {
+			if (++stamp == 0) {	// stamp wrapped around
+				Arrays.fill(marks, 0);
+				stamp = 1;
+			}
+			int numFound = 0;
+			int cx0 = Math.max(0, col(segment.getX() - margin));
+			int cx1 = Math.min(numCols - 1, col(segment.getX() + segment.getWidth() + margin));
+			int cy0 = Math.max(0, row(segment.getY() - margin));
+			int cy1 = Math.min(numRows - 1, row(segment.getY() + segment.getHeight() + margin));
+			for (int cx = cx0; cx <= cx1; cx++) {
+				for (int cy = cy0; cy <= cy1; cy++) {
+					int cellNo = cx * numRows + cy;
+					for (int k = cellStarts[cellNo]; k < cellStarts[cellNo + 1]; k++) {
+						int index = cellItems[k];
+						if (marks[index] != stamp) {
+							marks[index] = stamp;
+							found[numFound++] = index;
+						}
+					}
+				}
+			}
+			return numFound;
+		}
+
+		/**
+		 * @return index of a segment found by the last find.
+		 */
+		int getFound(int i) {
+			return found[i];
+		}
+
+		private int cell(float value) {
+			return (int)Math.floor(value / cellSize);
+		}
+
+		private int col(float x) {
+			return cell(x) - minX;
+		}
+
+		private int row(float y) {
+			return cell(y) - minY;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.hozawa.pdf2jrxml;
+
+/**
+ * Bounds of a stroked path in pdf page. Position and size are in pdf user space with origin at the bottom left of the page.
+ * 
+ * @author Hitoshi Ozawa
+ */
+public class PathSegment {
+	private final float x;
+	private final float y;
+	private final float width;
+	private final float height;
+	private final boolean rectangle;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param x x of bottom left corner of the bounds.
+	 * @param y y of bottom left corner of the bounds.
+	 * @param width width of the bounds.
+	 * @param height height of the bounds.
+	 * @param rectangle true if the path is closed.
+	 */
+	public PathSegment(float x, float y, float width, float height, boolean rectangle) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.rectangle = rectangle;
+	}
+	
+	public float getX() {
+		return this.x;
+	}
+	public float getY() {
+		return this.y;
+	}
+	public float getWidth() {
+		return this.width;
+	}
+	public float getHeight() {
+		return this.height;
+	}
+	
+	/**
+	 * @return true if the path is closed and is drawn as a rectangle.
+	 */
+	public boolean isRectangle() {
+		return this.rectangle;
+	}
+}
@@ -1,5 +1,12 @@
 package com.hozawa.pdf2jrxml;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
 import net.sf.jasperreports.engine.JRException;
 
 import org.apache.commons.cli.CommandLine;
@@ -18,6 +25,7 @@ import org.apache.commons.cli.ParseException;
  */
 public class Pdf2Jrxml {
 	private final static int OK_CODE = 0;
+	private final static int ERROR_CODE = 1;
 
     public static void main( String[] args ) {
     	String pdfFilename = "";
@@ -46,6 +54,126 @@ public class Pdf2Jrxml {
 				.desc("configuration property file to use")
 				.hasArg()
 				.build();
+		final Option allPagesOption = Option.builder("a")
+				.longOpt("all")
+				.required(false)
+				.desc("generate a jrxml file for every page in pdf file")
+				.build();
+		final Option pagesOption = Option.builder()
+				.longOpt("pages")
+				.required(false)
+				.desc("pages to convert (e.g. 1-5,12,40-). Generates a jrxml file for each page")
+				.hasArg()
+				.build();
+		final Option threadsOption = Option.builder("t")
+				.longOpt("threads")
+				.required(false)
+				.desc("number of threads to process pages")
+				.hasArg()
+				.build();
+		final Option virtualThreadsOption = Option.builder()
+				.longOpt("virtual-threads")
+				.required(false)
+				.desc("run documents and file reads and writes on virtual threads. Requires a build with the java21 profile")
+				.build();
+		final Option validateOption = Option.builder()
+				.longOpt("validate")
+				.required(false)
+				.desc("verify generated report design before writing jrxml file")
+				.build();
+		final Option streamOption = Option.builder()
+				.longOpt("stream")
+				.required(false)
+				.desc("write jrxml file with streaming writer")
+				.build();
+		final Option memoryOption = Option.builder()
+				.longOpt("memory")
+				.required(false)
+				.desc("buffering of loaded pdf: main, temp or mixed (default:main)")
+				.hasArg()
+				.build();
+		final Option maxMemoryOption = Option.builder()
+				.longOpt("max-memory")
+				.required(false)
+				.desc("maximum main memory in MB used by each loaded pdf")
+				.hasArg()
+				.build();
+		final Option tempDirOption = Option.builder()
+				.longOpt("temp-dir")
+				.required(false)
+				.desc("directory for scratch files (default:java.io.tmpdir)")
+				.hasArg()
+				.build();
+		final Option mmapOption = Option.builder()
+				.longOpt("mmap")
+				.required(false)
+				.desc("memory-map input pdf file instead of reading it into heap")
+				.build();
+		final Option pageCacheOption = Option.builder()
+				.longOpt("page-cache")
+				.required(false)
+				.desc("directory to cache generated pages. Unchanged pages are not converted again")
+				.hasArg()
+				.build();
+		final Option layoutCacheOption = Option.builder()
+				.longOpt("layout-cache")
+				.required(false)
+				.desc("number of page layouts to keep. Pages with a known layout are not converted again")
+				.hasArg()
+				.build();
+		final Option outputFormatOption = Option.builder()
+				.longOpt("output-format")
+				.required(false)
+				.desc("files to generate: jrxml, jasper or both (default:jrxml)")
+				.hasArg()
+				.build();
+		final Option jasperCacheOption = Option.builder()
+				.longOpt("jasper-cache")
+				.required(false)
+				.desc("directory to cache compiled reports. Designs compiled before are not compiled again")
+				.hasArg()
+				.build();
+		final Option inputDirOption = Option.builder()
+				.longOpt("input-dir")
+				.required(false)
+				.desc("directory of pdf files to convert in batch")
+				.hasArg()
+				.build();
+		final Option outputDirOption = Option.builder()
+				.longOpt("output-dir")
+				.required(false)
+				.desc("directory to generate jrxml files in batch (default:input directory)")
+				.hasArg()
+				.build();
+		final Option statsOption = Option.builder()
+				.longOpt("stats")
+				.required(false)
+				.desc("write conversion metrics as json to file (- for standard output)")
+				.hasArg()
+				.build();
+		final Option serverOption = Option.builder()
+				.longOpt("server")
+				.required(false)
+				.desc("run as local conversion server")
+				.build();
+		final Option portOption = Option.builder()
+				.longOpt("port")
+				.required(false)
+				.desc("port of conversion server (default:8090)")
+				.hasArg()
+				.build();
+		final Option concurrencyOption = Option.builder()
+				.longOpt("max-concurrent")
+				.required(false)
+				.desc("maximum number of conversions run at the same time by server")
+				.hasArg()
+				.build();
+		final Option queueOption = Option.builder()
+				.longOpt("queue")
+				.required(false)
+				.desc("maximum number of requests waiting for conversion in server")
+				.hasArg()
+				.build();
 		final Option helpOption = Option.builder("h")
 				.longOpt("help")
 				.required(false)
@@ -54,6 +182,28 @@ public class Pdf2Jrxml {
 		
 		options.addOption(pdfFilenameOption);
 		options.addOption(jrxmlFilenameOption);
+		options.addOption(propertyOption);
+		options.addOption(allPagesOption);
+		options.addOption(pagesOption);
+		options.addOption(threadsOption);
+		options.addOption(virtualThreadsOption);
+		options.addOption(validateOption);
+		options.addOption(streamOption);
+		options.addOption(memoryOption);
+		options.addOption(maxMemoryOption);
+		options.addOption(tempDirOption);
+		options.addOption(mmapOption);
+		options.addOption(pageCacheOption);
+		options.addOption(layoutCacheOption);
+		options.addOption(outputFormatOption);
+		options.addOption(jasperCacheOption);
+		options.addOption(inputDirOption);
+		options.addOption(outputDirOption);
+		options.addOption(statsOption);
+		options.addOption(serverOption);
+		options.addOption(portOption);
+		options.addOption(concurrencyOption);
+		options.addOption(queueOption);
 		options.addOption(helpOption);
     	
 		CommandLineParser parser = new DefaultParser();
@@ -71,10 +221,11 @@ public class Pdf2Jrxml {
 			}
 			
 			// read properties file
-			if (cmd.hasOption("c")) {
-				config = new Config(cmd.getOptionValue("c"));
-			} else {
-				config = new Config();
+			try {
+				config = cmd.hasOption("c") ? new Config(cmd.getOptionValue("c")) : new Config();
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				System.exit(ERROR_CODE);
 			}
 						
 			// pdf file
@@ -88,8 +239,130 @@ public class Pdf2Jrxml {
 				jrxmlFilename = cmd.getOptionValue("o");
 				config.setJrxmlFilename(jrxmlFilename);
 			}
+			
+			// pages to convert
+			if (cmd.hasOption("pages")) {
+				try {
+					config.setPages(cmd.getOptionValue("pages"));
+				} catch (IllegalArgumentException e) {
+					System.out.println(e.getMessage());
+					help(options);
+					System.exit(ERROR_CODE);
+				}
+			}
+			
+			// number of threads
+			if (cmd.hasOption("t")) {
+				config.setThreads(cmd.getOptionValue("t"));
+			}
+			if (cmd.hasOption("virtual-threads")) {
+				config.setVirtualThreads("true");
+			}
+			if (config.isVirtualThreads() && !TaskExecutors.isVirtualThreadSupported()) {
+				System.out.println("virtual threads require a build with the java21 profile and Java 21 or later");
+				System.exit(ERROR_CODE);
+			}
+			
+			// verify report design
+			if (cmd.hasOption("validate")) {
+				config.setValidate("true");
+			}
+			
+			// streaming jrxml writer
+			if (cmd.hasOption("stream")) {
+				config.setStreaming("true");
+			}
+			
+			// memory used to load pdf file
+			if (cmd.hasOption("memory")) {
+				config.setMemoryMode(cmd.getOptionValue("memory"));
+			}
+			if (cmd.hasOption("max-memory")) {
+				config.setMaxMainMemory(cmd.getOptionValue("max-memory"));
+			}
+			if (cmd.hasOption("temp-dir")) {
+				config.setTempDir(cmd.getOptionValue("temp-dir"));
+			}
+			if (cmd.hasOption("mmap")) {
+				config.setMmap("true");
+			}
+			
+			// reuse pages generated in previous runs
+			if (cmd.hasOption("page-cache")) {
+				config.setPageCacheDir(cmd.getOptionValue("page-cache"));
+			}
+			if (cmd.hasOption("layout-cache")) {
+				config.setLayoutCacheSize(cmd.getOptionValue("layout-cache"));
+			}
+			
+			// compile generated jrxml
+			if (cmd.hasOption("output-format")) {
+				config.setOutputFormat(cmd.getOptionValue("output-format"));
+			}
+			if (cmd.hasOption("jasper-cache")) {
+				config.setJasperCacheDir(cmd.getOptionValue("jasper-cache"));
+			}
+			
+			// run as conversion server
+			if (cmd.hasOption("server")) {
+				if (cmd.hasOption("port")) {
+					config.setServerPort(cmd.getOptionValue("port"));
+				}
+				if (cmd.hasOption("max-concurrent")) {
+					config.setServerConcurrency(cmd.getOptionValue("max-concurrent"));
+				}
+				if (cmd.hasOption("queue")) {
+					config.setServerQueue(cmd.getOptionValue("queue"));
+				}
+				final ConversionServer server = new ConversionServer(config);
+				try {
+					server.start();
+				} catch (IOException e) {
+					e.printStackTrace();
+					System.exit(ERROR_CODE);
+				}
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					@Override
+					public void run() {
+						server.stop(1);
+					}
+				});
+				System.out.println("conversion server listening on localhost:" + server.getPort());
+				return;
+			}
+			
+			// convert all pdf files in directory
+			if (cmd.hasOption("input-dir")) {
+				String inputDir = cmd.getOptionValue("input-dir");
+				String outputDir = cmd.getOptionValue("output-dir", inputDir);
+				BatchConverter converter = new BatchConverter(config);
+				int numFailed = converter.convertDirectory(inputDir, outputDir, cmd.hasOption("a"));
+				System.out.println("Finished.\nconverted pdf files:" + converter.getNumConverted() + "\nfailed pdf files:" + numFailed);
+				for (Map.Entry<String, String> failure : converter.getFailures().entrySet()) {
+					System.out.println("  " + failure.getKey() + ": " + failure.getValue());
+				}
+				if (cmd.hasOption("stats")) {
+					writeStats(cmd.getOptionValue("stats"), converter.getStats());
+				}
+				System.exit(numFailed == 0 ? OK_CODE : ERROR_CODE);
+			}
+			
 			// generate jrxml from pdf file
-			report.generateJrxml(config, config.getPdfFilename(), config.getJrxmlFilename());
+			int numGenerated = -1;	// not counted when converting one page
+			if (config.getPages() != null) {
+				numGenerated = report.generateJrxmlPages(config, config.getPdfFilename(), config.getJrxmlFilename(), config.getPages());
+			} else if (cmd.hasOption("a")) {
+				report.generateJrxmlAllPages(config, config.getPdfFilename(), config.getJrxmlFilename());
+			} else {
+				report.generateJrxml(config, config.getPdfFilename(), config.getJrxmlFilename());
+			}
+			if (cmd.hasOption("stats")) {
+				writeStats(cmd.getOptionValue("stats"), report.getStats());
+			}
+			if (numGenerated == 0) {
+				System.out.println("no selected page exists in pdf file:" + config.getPdfFilename());
+				System.exit(ERROR_CODE);
+			}
 		} catch (ParseException e) {
 			help(options);
 		} catch (JRException e) {
@@ -98,6 +371,23 @@ public class Pdf2Jrxml {
     	System.out.println("Finished.\ninput pdf filename:" + config.getPdfFilename() + "\noutput jrxml filename:" + config.getJrxmlFilename());
     }
 	
+    /**
+     * Write conversion metrics as json.
+     * @param filename file to write to. "-" to write to standard output.
+     * @param stats conversion metrics.
+     */
+	private static void writeStats(String filename, ConversionStats stats) {
+		if ("-".equals(filename)) {
+			System.out.print(stats.toJson());
+			return;
+		}
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8)) {
+			writer.write(stats.toJson());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
     /**
      * Display command line help.
      * @param options CLI options.
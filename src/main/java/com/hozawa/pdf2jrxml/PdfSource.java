@@ -0,0 +1,124 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.ScratchFile;
+import org.apache.pdfbox.pdfparser.PDFParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Pdf file to load PDDocuments from. Worker threads each load their own PDDocument from the same source.
+ * How the file content is held and how much heap is used by each loaded document is set by the configuration:
+ *   - memory_mode=main without max_main_memory: document buffers are kept in heap (default).
+ *   - memory_mode=main with max_main_memory: document buffers are limited to max_main_memory. Loading fails when exceeded.
+ *   - memory_mode=temp: document buffers are kept in a scratch file in temp_dir.
+ *   - memory_mode=mixed: up to max_main_memory is kept in heap and the rest in a scratch file.
+ *   - mmap=true: file is memory-mapped and shared by all documents. Files over 2GB are mapped in chunks.
+ * Without mmap, each document reads the file from disk and the file content is shared through the operating system
+ * file cache, so no copy of the whole file is kept in heap in addition to the loaded documents.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class PdfSource {
+	public static final String MEMORY_MODE_MAIN = "main";
+	public static final String MEMORY_MODE_TEMP = "temp";
+	public static final String MEMORY_MODE_MIXED = "mixed";
+
+	private static final long DEFAULT_MIXED_MAIN_MEMORY = 64L * 1024 * 1024;	// used when max_main_memory is not set in mixed mode
+	private static final long MAP_CHUNK_SIZE = 1L << 30;	// size of each mapped chunk. a mapped buffer is limited to 2GB
+
+	private final File file;
+	private final MemoryUsageSetting memoryUsageSetting;
+	private ByteBuffer[] mapped;	// memory-mapped content of file in chunks. null if not mapped
+
+	/**
+	 * Constructor. File is read or mapped according to the configuration.
+	 *
+	 * @param config configuration properties
+	 * @param file pdf file.
+	 * @throws IOException when file could not be read.
+	 */
+	public PdfSource(Config config, File file) throws IOException {
+		this.file = file;
+		this.memoryUsageSetting = createMemoryUsageSetting(config);
+		if (config.isMmap()) {
+			try {
+				mapped = map(file);
+			} catch (IOException e) {
+				// e.g. address space of a 32 bit jvm is exhausted
+				System.out.println("pdf file could not be memory-mapped. Reading " + file + " from disk: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Map file into memory in chunks of MAP_CHUNK_SIZE.
+	 *
+	 * @param file pdf file.
+	 * @return mapped chunks in order.
+	 * @throws IOException when file could not be mapped.
+	 */
+	private static ByteBuffer[] map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			int numChunks = (int)Math.max(1, (size + MAP_CHUNK_SIZE - 1) / MAP_CHUNK_SIZE);
+			ByteBuffer[] chunks = new ByteBuffer[numChunks];
+			for (int i = 0; i < numChunks; i++) {
+				long offset = i * MAP_CHUNK_SIZE;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_CHUNK_SIZE, size - offset));
+			}
+			return chunks;
+		}
+	}
+
+	/**
+	 * Load a new PDDocument. Caller must close the returned document.
+	 *
+	 * @return loaded pdf document.
+	 * @throws IOException when pdf could not be parsed.
+	 */
+	public PDDocument load() throws IOException {
+		if (mapped != null) {
+			ScratchFile scratchFile = new ScratchFile(memoryUsageSetting);
+			try {
+				PDFParser parser = new PDFParser(new MappedRandomAccessRead(mapped), "", null, null, scratchFile);
+				parser.parse();
+				return parser.getPDDocument();
+			} catch (IOException e) {
+				IOUtils.closeQuietly(scratchFile);
+				throw e;
+			}
+		}
+		return PDDocument.load(file, memoryUsageSetting);
+	}
+
+	/**
+	 * Create PDFBox memory usage setting from configuration.
+	 *
+	 * @param config configuration properties
+	 * @return memory usage setting for each loaded document.
+	 */
+	static MemoryUsageSetting createMemoryUsageSetting(Config config) {
+		long maxMainMemory = config.getMaxMainMemory() > 0 ? config.getMaxMainMemory() * 1024L * 1024L : -1;
+		MemoryUsageSetting setting;
+		if (MEMORY_MODE_TEMP.equals(config.getMemoryMode())) {
+			setting = MemoryUsageSetting.setupTempFileOnly();
+		} else if (MEMORY_MODE_MIXED.equals(config.getMemoryMode())) {
+			setting = MemoryUsageSetting.setupMixed(maxMainMemory > 0 ? maxMainMemory : DEFAULT_MIXED_MAIN_MEMORY);
+		} else if (maxMainMemory > 0) {
+			setting = MemoryUsageSetting.setupMainMemoryOnly(maxMainMemory);
+		} else {
+			setting = MemoryUsageSetting.setupMainMemoryOnly();
+		}
+		if (config.getTempDir() != null) {
+			setting.setTempDir(new File(config.getTempDir()));
+		}
+		return setting;
+	}
+}
@@ -0,0 +1,196 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRSaver;
+
+/**
+ * Pool of background threads to compile generated jrxml into jasper files so page extraction is not blocked by
+ * report compilation. Compiled reports are identified by a hash of the jrxml, so a design that has already been
+ * compiled is copied instead of being compiled again. Element uuids are random for each generated design and are
+ * not part of the hash.
+ * Recently compiled reports are kept in memory. When a cache directory is set, compiled reports are also saved
+ * in the directory and reused by later runs.
+ * Number of waiting reports is bounded. When the queue is full, the report is compiled by the calling thread.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class ReportCompiler {
+	private static final String HASH_ALGORITHM = "SHA-1";
+	private static final String JASPER_EXTENSION = ".jasper";
+	private static final int QUEUE_SIZE_PER_THREAD = 4;
+	private static final int MAX_REPORTS = 64;	// number of compiled reports kept in memory
+	private static final Pattern UUID_ATTRIBUTE = Pattern.compile(" uuid=\"[^\"]*\"");
+
+	private final File cacheDir;
+	private final ThreadPoolExecutor executor;
+	private final ConversionStats stats;
+	private final Map<String, FutureTask<byte[]>> reports;	// hash of jrxml -> compiled report
+
+	/**
+	 * Constructor.
+	 *
+	 * @param cacheDir directory to save compiled reports. null to keep compiled reports in memory only.
+	 * @param numThreads number of threads to compile reports.
+	 * @param stats metrics to record compile time and number of compiled reports.
+	 */
+	public ReportCompiler(String cacheDir, int numThreads, ConversionStats stats) {
+		this.cacheDir = cacheDir == null ? null : new File(cacheDir);
+		this.stats = stats;
+		this.reports = new LinkedHashMap<String, FutureTask<byte[]>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FutureTask<byte[]>> eldest) {
+				return size() > MAX_REPORTS;
+			}
+		};
+		final AtomicInteger threadNo = new AtomicInteger();
+		executor = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(numThreads * QUEUE_SIZE_PER_THREAD),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "pdf2jrxml-compile-" + threadNo.incrementAndGet());
+						thread.setDaemon(true);	// compiler is never shut down. do not keep jvm running
+						return thread;
+					}
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Compile jrxml and save the jasper file in background.
+	 *
+	 * @param jrxml content of jrxml file.
+	 * @param jasperFile jasper file to save.
+	 * @return future to wait for jasper file to be saved.
+	 */
+	public Future<Void> compile(final byte[] jrxml, final File jasperFile) {
+		return executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException, JRException {
+				byte[] jasper = getReport(getKey(jrxml), jrxml);
+				Files.write(jasperFile.toPath(), jasper);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Return compiled report. Report is read from the cache or compiled by the calling thread.
+	 * When another thread is compiling the same design, waits for it instead of compiling again.
+	 */
+	private byte[] getReport(final String key, final byte[] jrxml) throws IOException, JRException {
+		FutureTask<byte[]> report;
+		boolean isOwner = false;
+		synchronized (reports) {
+			report = reports.get(key);
+			if (report == null) {
+				report = new FutureTask<byte[]>(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws IOException, JRException {
+						return loadReport(key, jrxml);
+					}
+				});
+				reports.put(key, report);
+				isOwner = true;
+			}
+		}
+		if (isOwner) {
+			report.run();
+		} else {
+			stats.addReusedReport();
+		}
+		try {
+			return report.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			synchronized (reports) {
+				reports.remove(key, report);	// compile again next time
+			}
+			if (e.getCause() instanceof JRException) {
+				throw (JRException)e.getCause();
+			} else if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new JRException(e.getCause());
+		}
+	}
+
+	/**
+	 * Read compiled report from the cache directory or compile it.
+	 */
+	private byte[] loadReport(String key, byte[] jrxml) throws IOException, JRException {
+		File cachedFile = cacheDir == null ? null : new File(cacheDir, key + JASPER_EXTENSION);
+		if (cachedFile != null && cachedFile.isFile()) {
+			stats.addReusedReport();
+			return Files.readAllBytes(cachedFile.toPath());
+		}
+		ConversionStats.Timer timer = stats.start(ConversionStats.Stage.COMPILE);
+		JasperReport jasperReport = JasperCompileManager.compileReport(new ByteArrayInputStream(jrxml));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JRSaver.saveObject(jasperReport, out);
+		timer.stop();
+		stats.addCompiledReport();
+		byte[] jasper = out.toByteArray();
+		if (cachedFile != null) {
+			if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+				throw new IOException("could not create cache directory " + cacheDir);
+			}
+			// write to a temporary file first so that other processes never read a partial file
+			File tempFile = File.createTempFile(key, ".tmp", cacheDir);
+			Files.write(tempFile.toPath(), jasper);
+			Files.move(tempFile.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return jasper;
+	}
+
+	/**
+	 * Compute hash of jrxml without element uuids.
+	 *
+	 * @param jrxml content of jrxml file.
+	 * @return hex string of hash.
+	 */
+	static String getKey(byte[] jrxml) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		String design = UUID_ATTRIBUTE.matcher(new String(jrxml, StandardCharsets.ISO_8859_1)).replaceAll("");
+		byte[] hash = digest.digest(design.getBytes(StandardCharsets.ISO_8859_1));
+		StringBuilder sb = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,61 @@
+package com.hozawa.pdf2jrxml;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jasperreports.engine.design.JRDesignStyle;
+
+/**
+ * Styles of text elements in a page. Elements with the same font and color share a style instead of holding
+ * their own font attributes, so a page with thousands of text elements has only a few style definitions.
+ * Styles are named Style_1, Style_2, ... in order of first use.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class StyleTable {
+	private static final String STYLE_NAME_PREFIX = "Style_";
+
+	private final Map<String, JRDesignStyle> styles = new HashMap<String, JRDesignStyle>();	// font attributes -> style
+	private final List<JRDesignStyle> styleList = new ArrayList<JRDesignStyle>();
+
+	/**
+	 * Return style with the font and color. Style is created on first use.
+	 *
+	 * @param fontName name of the font.
+	 * @param fontSize font size in point.
+	 * @param bold true if font is bold.
+	 * @param italic true if font is italic.
+	 * @param forecolor color of text.
+	 * @return shared style.
+	 */
+	public JRDesignStyle getStyle(String fontName, float fontSize, boolean bold, boolean italic, Color forecolor) {
+		String key = fontName + "|" + fontSize + "|" + bold + "|" + italic + "|" + forecolor.getRGB();
+		JRDesignStyle style = styles.get(key);
+		if (style == null) {
+			style = new JRDesignStyle();
+			style.setName(STYLE_NAME_PREFIX + (styleList.size() + 1));
+			style.setFontName(fontName);
+			style.setFontSize(fontSize);
+			if (bold) {
+				style.setBold(true);
+			}
+			if (italic) {
+				style.setItalic(true);
+			}
+			style.setForecolor(forecolor);
+			styles.put(key, style);
+			styleList.add(style);
+		}
+		return style;
+	}
+
+	/**
+	 * @return styles in order of first use.
+	 */
+	public List<JRDesignStyle> getStyles() {
+		return this.styleList;
+	}
+}
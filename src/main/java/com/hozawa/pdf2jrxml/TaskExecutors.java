@@ -0,0 +1,81 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Executors used to run conversions. In virtual thread mode, documents and the stages waiting on files (reading pdf,
+ * saving images and writing jrxml) run on virtual threads, while parsing and extraction of pages run on a fixed pool
+ * with one thread for each processor, the same number as the carrier threads of virtual threads.
+ * Virtual threads are available when the classes are built with the java21 profile and run on Java 21 or later.
+ *
+ * @author Hitoshi Ozawa
+ */
+public final class TaskExecutors {
+	private static final String VIRTUAL_THREADS_CLASS = "com.hozawa.pdf2jrxml.VirtualThreads";	// in src/main/java21
+	private static final Function<String, ExecutorService> VIRTUAL_THREADS = loadVirtualThreads();
+
+	private TaskExecutors() {
+	}
+
+	/**
+	 * @return true if virtual threads can be used.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VIRTUAL_THREADS != null;
+	}
+
+	/**
+	 * Create executor that starts a new virtual thread for each task.
+	 *
+	 * @param name prefix of thread names.
+	 * @return executor.
+	 * @throws UnsupportedOperationException when virtual threads are not available.
+	 */
+	public static ExecutorService newVirtualThreadExecutor(String name) {
+		if (VIRTUAL_THREADS == null) {
+			throw new UnsupportedOperationException("virtual threads require a build with the java21 profile and Java 21 or later");
+		}
+		return VIRTUAL_THREADS.apply(name);
+	}
+
+	/**
+	 * Create pool of platform threads.
+	 *
+	 * @param name prefix of thread names.
+	 * @param numThreads number of threads.
+	 * @return executor.
+	 */
+	public static ExecutorService newFixedThreadPool(final String name, int numThreads) {
+		final AtomicInteger threadNo = new AtomicInteger();
+		return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + threadNo.incrementAndGet());
+				thread.setDaemon(true);	// do not keep jvm running when caller exits without shutdown
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @return number of carrier threads of virtual threads.
+	 */
+	public static int getCarrierThreads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Function<String, ExecutorService> loadVirtualThreads() {
+		try {
+			return (Function<String, ExecutorService>)Class.forName(VIRTUAL_THREADS_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			return null;	// not built with the java21 profile
+		} catch (LinkageError e) {
+			return null;	// running on Java older than 21
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.hozawa.pdf2jrxml;
+
+/**
+ * Text string with its position and font extracted from pdf page.
+ * Position is in pdf user space with origin at the top left of the page. y is the baseline of the text.
+ * 
+ * @author Hitoshi Ozawa
+ */
+public class TextRun {
+	private final float x;
+	private final float y;
+	private final float width;
+	private final float height;
+	private final String fontName;
+	private final float fontSize;
+	private final float fontWeight;
+	private final boolean bold;
+	private final boolean forceBold;
+	private final boolean italic;
+	private final int color;
+	private final String text;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param x x of start of the text.
+	 * @param y y of baseline of the text.
+	 * @param width width of the text.
+	 * @param height cap height of the font.
+	 * @param fontName name of the font without subset prefix and style suffix.
+	 * @param fontSize font size in point.
+	 * @param fontWeight font weight in font descriptor.
+	 * @param bold true if font name contains "bold".
+	 * @param forceBold true if font descriptor has force bold flag.
+	 * @param italic true if font is italic.
+	 * @param color packed RGB color (0xRRGGBB) of the first character.
+	 * @param text text string.
+	 */
+	public TextRun(float x, float y, float width, float height, String fontName, float fontSize, float fontWeight,
+			boolean bold, boolean forceBold, boolean italic, int color, String text) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.fontName = fontName;
+		this.fontSize = fontSize;
+		this.fontWeight = fontWeight;
+		this.bold = bold;
+		this.forceBold = forceBold;
+		this.italic = italic;
+		this.color = color;
+		this.text = text;
+	}
+	
+	public float getX() {
+		return this.x;
+	}
+	public float getY() {
+		return this.y;
+	}
+	public float getWidth() {
+		return this.width;
+	}
+	public float getHeight() {
+		return this.height;
+	}
+	public String getFontName() {
+		return this.fontName;
+	}
+	public float getFontSize() {
+		return this.fontSize;
+	}
+	public float getFontWeight() {
+		return this.fontWeight;
+	}
+	
+	/**
+	 * @return true if font name contains "bold".
+	 */
+	public boolean isBold() {
+		return this.bold;
+	}
+	
+	/**
+	 * @return true if font descriptor has force bold flag.
+	 */
+	public boolean isForceBold() {
+		return this.forceBold;
+	}
+	public boolean isItalic() {
+		return this.italic;
+	}
+	
+	/**
+	 * @return packed RGB color (0xRRGGBB) of the first character.
+	 */
+	public int getColor() {
+		return this.color;
+	}
+	public String getText() {
+		return this.text;
+	}
+}
@@ -0,0 +1,171 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merge text strings on the same line into a single string. Some pdf files position each word or character separately,
+ * which would create a static text element for every word. Horizontally adjacent strings with the same font, size,
+ * style, color and baseline are joined when the gap between them is within the spacing.
+ * Strings are looked up in a grid of buckets so that each string is only compared with its neighbours.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class TextRunMerger {
+	private static final float CELL_SIZE = 32f;				// size of grid bucket in points
+	private static final float BASELINE_TOLERANCE = 0.1f;	// maximum difference of baselines as ratio of font size
+	private static final float SPACE_WIDTH = 0.15f;			// gap to insert a space as ratio of font size
+
+	private final float spacing;
+	private int numRemoved = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param spacing maximum gap between strings to merge as ratio of font size.
+	 */
+	public TextRunMerger(float spacing) {
+		this.spacing = spacing;
+	}
+
+	/**
+	 * Merge text strings.
+	 *
+	 * @param textRuns text strings in the page.
+	 * @return merged text strings. Order of strings is kept and a merged string takes the place of its leftmost string.
+	 */
+	public List<TextRun> merge(List<TextRun> textRuns) {
+		Map<Long, List<Integer>> cells = new HashMap<Long, List<Integer>>();
+		for (int i = 0; i < textRuns.size(); i++) {
+			TextRun textRun = textRuns.get(i);
+			long key = key(cellOf(textRun.getX()), cellOf(textRun.getY()));
+			List<Integer> cell = cells.get(key);
+			if (cell == null) {
+				cell = new ArrayList<Integer>();
+				cells.put(key, cell);
+			}
+			cell.add(i);
+		}
+
+		// start merging from the left end of each line so that strings are joined from left to right
+		List<Integer> byPosition = new ArrayList<Integer>(textRuns.size());
+		for (int i = 0; i < textRuns.size(); i++) {
+			byPosition.add(i);
+		}
+		final List<TextRun> runs = textRuns;
+		Collections.sort(byPosition, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Float.compare(runs.get(i1).getX(), runs.get(i2).getX());
+			}
+		});
+
+		boolean[] merged = new boolean[textRuns.size()];
+		TextRun[] results = new TextRun[textRuns.size()];
+		for (int first : byPosition) {
+			if (merged[first]) {
+				continue;
+			}
+			TextRun current = textRuns.get(first);
+			float fromX = current.getX();
+			int next;
+			while ((next = findNext(textRuns, cells, merged, current, fromX)) >= 0) {
+				merged[next] = true;
+				fromX = textRuns.get(next).getX();
+				current = join(current, textRuns.get(next));
+				numRemoved++;
+			}
+			results[first] = current;
+		}
+
+		List<TextRun> mergedRuns = new ArrayList<TextRun>(textRuns.size());
+		for (int i = 0; i < results.length; i++) {
+			if (!merged[i]) {
+				mergedRuns.add(results[i]);
+			}
+		}
+		return mergedRuns;
+	}
+
+	/**
+	 * @return number of text strings removed by merge since this merger was created.
+	 */
+	public int getNumRemoved() {
+		return this.numRemoved;
+	}
+
+	/**
+	 * Find the nearest string right of the text string that can be joined to it.
+	 * Strings left of the last joined string were already checked, so buckets are scanned from the last joined string
+	 * instead of from the left end of the line, which keeps joining a long line linear.
+	 *
+	 * @param fromX x of the last string joined to the text string. x of the text string if none has been joined.
+	 * @return index of the string. -1 if not found.
+	 */
+	private int findNext(List<TextRun> textRuns, Map<Long, List<Integer>> cells, boolean[] merged, TextRun textRun, float fromX) {
+		float fontSize = textRun.getFontSize();
+		float right = textRun.getX() + textRun.getWidth();
+		float maxX = right + spacing * fontSize;
+		float baselineTolerance = BASELINE_TOLERANCE * fontSize;
+
+		int found = -1;
+		float foundX = Float.MAX_VALUE;
+		for (int cellX = cellOf(fromX); cellX <= cellOf(maxX); cellX++) {
+			for (int cellY = cellOf(textRun.getY() - baselineTolerance); cellY <= cellOf(textRun.getY() + baselineTolerance); cellY++) {
+				List<Integer> cell = cells.get(key(cellX, cellY));
+				if (cell == null) {
+					continue;
+				}
+				for (int i : cell) {
+					TextRun candidate = textRuns.get(i);
+					if (!merged[i] && candidate != textRun && candidate.getX() > textRun.getX() && candidate.getX() >= fromX
+							&& candidate.getX() <= maxX
+							&& candidate.getX() < foundX
+							&& Math.abs(candidate.getY() - textRun.getY()) <= baselineTolerance
+							&& isSameStyle(textRun, candidate)) {
+						found = i;
+						foundX = candidate.getX();
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	private static boolean isSameStyle(TextRun textRun1, TextRun textRun2) {
+		return textRun1.getFontSize() == textRun2.getFontSize()
+				&& textRun1.getColor() == textRun2.getColor()
+				&& textRun1.isBold() == textRun2.isBold()
+				&& textRun1.isForceBold() == textRun2.isForceBold()
+				&& textRun1.isItalic() == textRun2.isItalic()
+				&& (textRun1.getFontName() == null ? textRun2.getFontName() == null : textRun1.getFontName().equals(textRun2.getFontName()));
+	}
+
+	/**
+	 * Join two text strings. A space is inserted when there is a gap between them.
+	 */
+	private static TextRun join(TextRun left, TextRun right) {
+		float gap = right.getX() - (left.getX() + left.getWidth());
+		String text = left.getText();
+		if (gap > SPACE_WIDTH * left.getFontSize() && !text.endsWith(" ") && !right.getText().startsWith(" ")) {
+			text += " ";
+		}
+		text += right.getText();
+		float width = Math.max(left.getWidth(), right.getX() + right.getWidth() - left.getX());
+		return new TextRun(left.getX(), left.getY(), width, Math.max(left.getHeight(), right.getHeight()),
+				left.getFontName(), left.getFontSize(), left.getFontWeight(), left.isBold(), left.isForceBold(), left.isItalic(),
+				left.getColor(), text);
+	}
+
+	private static int cellOf(float position) {
+		return (int)Math.floor(position / CELL_SIZE);
+	}
+
+	private static long key(int cellX, int cellY) {
+		return ((long)cellX << 32) | (cellY & 0xffffffffL);
+	}
+}
@@ -0,0 +1,23 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Create executors that start a new virtual thread for each task. Compiled only with the java21 profile and
+ * loaded by TaskExecutors when virtual thread mode is used.
+ *
+ * @author Hitoshi Ozawa
+ */
+public class VirtualThreads implements Function<String, ExecutorService> {
+
+	/**
+	 * @param name prefix of thread names.
+	 * @return executor starting a virtual thread for each task.
+	 */
+	@Override
+	public ExecutorService apply(String name) {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+	}
+}
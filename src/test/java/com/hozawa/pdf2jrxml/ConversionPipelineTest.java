@@ -0,0 +1,124 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for ConversionPipeline. Stages must end after the last item even when there are more workers than items,
+ * and a file that could not be converted must not stop the other files.
+ */
+public class ConversionPipelineTest extends TestCase {
+	private static final long TIMEOUT = 60000;
+
+	private File dir;
+	private Config config;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = FileFixtures.createTempDir();
+		config = new Config();
+		config.setImgDir(new File(dir, "img").getPath());
+		config.setThreads("3");
+		config.setReadThreads("2");
+		config.setDesignThreads("2");
+		config.setWriteThreads("2");
+		config.setStageQueue("1");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileFixtures.delete(dir);
+	}
+
+	/**
+	 * Convert jobs on another thread and fail if the conversion does not end.
+	 */
+	private void convert(final List<ConversionPipeline.Job> jobs) throws InterruptedException {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				new ConversionPipeline(new JrxmlReport(), config).convert(jobs);
+			}
+		});
+		thread.start();
+		thread.join(TIMEOUT);
+		assertFalse("pipeline did not end", thread.isAlive());
+	}
+
+	private ConversionPipeline.Job createJob(String name, int numPages, PageRange pageRange) throws IOException {
+		File pdfFile = new File(dir, name + ".pdf");
+		FileFixtures.writePdf(pdfFile, numPages);
+		return new ConversionPipeline.Job(pdfFile, new File(dir, name + ".jrxml").getPath(), pageRange);
+	}
+
+	public void testNoJobs() throws Exception {
+		convert(Collections.<ConversionPipeline.Job>emptyList());
+	}
+
+	public void testAllPagesAreConverted() throws Exception {
+		List<ConversionPipeline.Job> jobs = new ArrayList<ConversionPipeline.Job>();
+		jobs.add(createJob("first", 1, null));
+		jobs.add(createJob("many", 12, new PageRange("1-")));
+		jobs.add(createJob("selected", 12, new PageRange("2,10-")));
+		convert(jobs);
+
+		assertNull(jobs.get(0).getError());
+		assertEquals(1, jobs.get(0).getNumGenerated());
+		assertTrue(new File(dir, "first.jrxml").isFile());
+		assertEquals(12, jobs.get(1).getNumGenerated());
+		for (int i = 1; i <= 12; i++) {
+			assertTrue(new File(dir, "many_" + i + ".jrxml").isFile());
+		}
+		assertEquals(4, jobs.get(2).getNumGenerated());
+		assertTrue(new File(dir, "selected_2.jrxml").isFile());
+		assertFalse(new File(dir, "selected_3.jrxml").exists());
+		assertTrue(new File(dir, "selected_12.jrxml").isFile());
+	}
+
+	public void testBrokenFileDoesNotStopOtherFiles() throws Exception {
+		File brokenFile = new File(dir, "broken.pdf");
+		try (FileOutputStream os = new FileOutputStream(brokenFile)) {
+			os.write("%PDF-1.4\nnot a pdf".getBytes(StandardCharsets.ISO_8859_1));
+		}
+		List<ConversionPipeline.Job> jobs = new ArrayList<ConversionPipeline.Job>();
+		jobs.add(new ConversionPipeline.Job(brokenFile, new File(dir, "broken.jrxml").getPath(), null));
+		jobs.add(createJob("valid", 3, new PageRange("1-")));
+		convert(jobs);
+
+		assertNotNull(jobs.get(0).getError());
+		assertEquals(0, jobs.get(0).getNumGenerated());
+		assertNull(jobs.get(1).getError());
+		assertEquals(3, jobs.get(1).getNumGenerated());
+	}
+
+	public void testUnreadablePageFailsJob() throws Exception {
+		ConversionPipeline.Job job = createJob("damaged", 3, new PageRange("1-"));
+		try (PDDocument document = PDDocument.load(job.getPdfFile())) {
+			PDStream content = new PDStream(document);
+			try (OutputStream os = content.createOutputStream()) {
+				os.write("not a flate stream".getBytes(StandardCharsets.ISO_8859_1));
+			}
+			content.getCOSObject().setItem(COSName.FILTER, COSName.FLATE_DECODE);
+			document.getPage(1).setContents(content);
+			document.save(job.getPdfFile());
+		}
+		convert(Collections.singletonList(job));
+
+		assertNotNull(job.getError());
+		assertTrue(job.getError(), job.getError().contains("page 2"));
+		assertEquals(2, job.getNumGenerated());
+		assertFalse(new File(dir, "damaged_2.jrxml").exists());
+	}
+}
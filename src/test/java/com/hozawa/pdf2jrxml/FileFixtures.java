@@ -0,0 +1,62 @@
+package com.hozawa.pdf2jrxml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Temporary files used by tests.
+ */
+class FileFixtures {
+
+	/**
+	 * Create an empty temporary directory.
+	 */
+	static File createTempDir() throws IOException {
+		return Files.createTempDirectory("pdf2jrxml-test").toFile();
+	}
+
+	/**
+	 * Delete a file or a directory with its content.
+	 */
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Write a pdf file with a line of text and a line on each page.
+	 *
+	 * @param file pdf file to write.
+	 * @param numPages number of pages.
+	 */
+	static void writePdf(File file, int numPages) throws IOException {
+		try (PDDocument document = new PDDocument()) {
+			for (int i = 0; i < numPages; i++) {
+				PDPage page = new PDPage();
+				document.addPage(page);
+				try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+					content.beginText();
+					content.setFont(PDType1Font.HELVETICA, 12);
+					content.newLineAtOffset(50, 700);
+					content.showText("Page " + (i + 1));
+					content.endText();
+					content.moveTo(50, 690);
+					content.lineTo(300, 690);
+					content.stroke();
+				}
+			}
+			document.save(file);
+		}
+	}
+}
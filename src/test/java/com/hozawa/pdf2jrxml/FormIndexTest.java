@@ -0,0 +1,149 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDCheckBox;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDNonTerminalField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDPushButton;
+import org.apache.pdfbox.pdmodel.interactive.form.PDRadioButton;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDVariableText;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for FormIndex.
+ */
+public class FormIndexTest extends TestCase {
+	private PDDocument document;
+	private PDAcroForm acroForm;
+
+	@Override
+	protected void setUp() throws Exception {
+		document = new PDDocument();
+		acroForm = new PDAcroForm(document);
+		document.getDocumentCatalog().setAcroForm(acroForm);
+		document.addPage(new PDPage());
+		document.addPage(new PDPage());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		document.close();
+	}
+
+	/**
+	 * Create widget drawn on a page.
+	 *
+	 * @param page page of the widget.
+	 * @param setPage true to set /P of the widget. false to list the widget only in /Annots of the page.
+	 * @param onState name of the on appearance state. null for a widget without states.
+	 */
+	private PDAnnotationWidget createWidget(PDPage page, boolean setPage, float y, String onState) throws Exception {
+		PDAnnotationWidget widget = new PDAnnotationWidget();
+		widget.setRectangle(new PDRectangle(50, y, 100, 20));
+		if (setPage) {
+			widget.setPage(page);
+		}
+		page.getAnnotations().add(widget);
+		if (onState != null) {
+			COSDictionary normal = new COSDictionary();
+			normal.setItem(COSName.Off, document.getDocument().createCOSStream());
+			normal.setItem(COSName.getPDFName(onState), document.getDocument().createCOSStream());
+			COSDictionary appearance = new COSDictionary();
+			appearance.setItem(COSName.N, normal);
+			widget.getCOSObject().setItem(COSName.AP, appearance);
+		}
+		return widget;
+	}
+
+	private static void setParent(PDField field, PDNonTerminalField parent) {
+		field.getCOSObject().setItem(COSName.PARENT, parent.getCOSObject());
+	}
+
+	public void testRadioGroupWidgetsAreIndexedByPage() throws Exception {
+		PDRadioButton radio = new PDRadioButton(acroForm);
+		radio.setPartialName("size");
+		radio.setWidgets(Arrays.asList(
+				createWidget(document.getPage(0), true, 700, "small"),
+				createWidget(document.getPage(0), true, 650, "medium"),
+				createWidget(document.getPage(1), true, 700, "large")));
+		acroForm.getFields().add(radio);
+
+		FormIndex formIndex = new FormIndex(document);
+		List<FormIndex.FormWidget> widgets = formIndex.getWidgets(0);
+		assertEquals(2, widgets.size());
+		for (FormIndex.FormWidget widget : widgets) {
+			assertEquals("size", widget.getFieldName());
+			assertTrue(widget.isRadioButton());
+			assertEquals(String.class, widget.getValueClass());
+		}
+		assertEquals("small", widgets.get(0).getOnValue());
+		assertEquals("medium", widgets.get(1).getOnValue());
+		assertEquals(1, formIndex.getWidgets(1).size());
+		assertEquals("large", formIndex.getWidgets(1).get(0).getOnValue());
+	}
+
+	public void testNestedFields() throws Exception {
+		PDNonTerminalField person = new PDNonTerminalField(acroForm);
+		person.setPartialName("person");
+		PDNonTerminalField address = new PDNonTerminalField(acroForm);
+		address.setPartialName("address");
+		PDTextField name = new PDTextField(acroForm);
+		name.setPartialName("name");
+		name.setQ(PDVariableText.QUADDING_RIGHT);
+		name.setWidgets(Arrays.asList(createWidget(document.getPage(0), true, 700, null)));
+		PDTextField city = new PDTextField(acroForm);
+		city.setPartialName("city");
+		city.setWidgets(Arrays.asList(createWidget(document.getPage(1), false, 700, null)));	// found from /Annots
+		PDCheckBox member = new PDCheckBox(acroForm);
+		member.setPartialName("member");
+		member.setWidgets(Arrays.asList(createWidget(document.getPage(1), true, 650, "Yes")));
+		setParent(address, person);
+		setParent(name, person);
+		setParent(city, address);
+		setParent(member, person);
+		address.setChildren(Arrays.<PDField>asList(city));
+		person.setChildren(Arrays.<PDField>asList(name, address, member));
+		acroForm.getFields().add(person);
+
+		FormIndex formIndex = new FormIndex(document);
+		assertEquals(1, formIndex.getWidgets(0).size());
+		FormIndex.FormWidget nameWidget = formIndex.getWidgets(0).get(0);
+		assertEquals("person.name", nameWidget.getFieldName());
+		assertEquals(PDVariableText.QUADDING_RIGHT, nameWidget.getQuadding());
+		assertEquals(700f, nameWidget.getRectangle().getLowerLeftY(), 0.001f);
+
+		List<FormIndex.FormWidget> widgets = formIndex.getWidgets(1);
+		assertEquals(2, widgets.size());
+		assertEquals("person.address.city", widgets.get(0).getFieldName());
+		assertEquals("person.member", widgets.get(1).getFieldName());
+		assertTrue(widgets.get(1).isCheckBox());
+		assertEquals(Boolean.class, widgets.get(1).getValueClass());
+		assertEquals("Yes", widgets.get(1).getOnValue());
+	}
+
+	public void testPushButtonsAreNotIndexed() throws Exception {
+		PDPushButton button = new PDPushButton(acroForm);
+		button.setPartialName("submit");
+		button.setWidgets(Arrays.asList(createWidget(document.getPage(0), true, 700, null)));
+		acroForm.getFields().add(button);
+		assertTrue(new FormIndex(document).getWidgets(0).isEmpty());
+	}
+
+	public void testDocumentWithoutForm() throws Exception {
+		try (PDDocument empty = new PDDocument()) {
+			empty.addPage(new PDPage());
+			assertTrue(new FormIndex(empty).getWidgets(0).isEmpty());
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.hozawa.pdf2jrxml;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the content hash of ImageCache.
+ */
+public class ImageCacheTest extends TestCase {
+	private File imgDir;
+	private PDDocument document;
+
+	@Override
+	protected void setUp() throws Exception {
+		imgDir = FileFixtures.createTempDir();
+		document = new PDDocument();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		document.close();
+		FileFixtures.delete(imgDir);
+	}
+
+	private static BufferedImage createImage(int rgb) {
+		BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 8; y++) {
+			for (int x = 0; x < 8; x++) {
+				image.setRGB(x, y, (x + y) % 2 == 0 ? rgb : 0xffffff);
+			}
+		}
+		return image;
+	}
+
+	public void testSameImageIsSavedOnce() throws Exception {
+		ImageCache imageCache = new ImageCache(imgDir.getPath());
+		String filename1 = imageCache.getImageFile(LosslessFactory.createFromImage(document, createImage(0x336699))).getFilename();
+		String filename2 = imageCache.getImageFile(LosslessFactory.createFromImage(document, createImage(0x336699))).getFilename();
+		assertEquals(filename1, filename2);
+		assertTrue(filename1.endsWith(".png"));
+		assertTrue(new File(imgDir, filename1).isFile());
+	}
+
+	public void testDifferentImagesAreSavedSeparately() throws Exception {
+		ImageCache imageCache = new ImageCache(imgDir.getPath());
+		String filename1 = imageCache.getImageFile(LosslessFactory.createFromImage(document, createImage(0x336699))).getFilename();
+		String filename2 = imageCache.getImageFile(LosslessFactory.createFromImage(document, createImage(0x993366))).getFilename();
+		assertFalse(filename1.equals(filename2));
+	}
+
+	public void testDecodeArrayChangesHash() throws Exception {
+		ImageCache imageCache = new ImageCache(imgDir.getPath());
+		PDImageXObject image = LosslessFactory.createFromImage(document, createImage(0x336699));
+		PDImageXObject inverted = LosslessFactory.createFromImage(document, createImage(0x336699));
+		COSArray decode = new COSArray();
+		for (int i = 0; i < 3; i++) {
+			decode.add(COSInteger.ONE);
+			decode.add(COSInteger.ZERO);
+		}
+		inverted.getCOSObject().setItem(COSName.DECODE, decode);
+		assertFalse(imageCache.getImageFile(image).getFilename().equals(imageCache.getImageFile(inverted).getFilename()));
+	}
+
+	public void testJpegIsSavedAsIs() throws Exception {
+		ImageCache imageCache = new ImageCache(imgDir.getPath());
+		String filename = imageCache.getImageFile(JPEGFactory.createFromImage(document, createImage(0x336699))).getFilename();
+		assertTrue(filename.endsWith(".jpg"));
+	}
+
+	public void testSavedImagesAreLoadedFromIndex() throws Exception {
+		String filename = new ImageCache(imgDir.getPath())
+				.getImageFile(LosslessFactory.createFromImage(document, createImage(0x336699))).getFilename();
+		File file = new File(imgDir, filename);
+		file.setLastModified(file.lastModified() - 60000);
+		long lastModified = file.lastModified();
+
+		ImageCache reloaded = new ImageCache(imgDir.getPath());
+		assertEquals(filename, reloaded.getImageFile(LosslessFactory.createFromImage(document, createImage(0x336699))).getFilename());
+		assertEquals(lastModified, file.lastModified());	// not saved again
+	}
+}
@@ -0,0 +1,111 @@
+package com.hozawa.pdf2jrxml;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+
+import net.sf.jasperreports.engine.design.JasperDesign;
+import net.sf.jasperreports.engine.xml.JRXmlWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for JrxmlStreamWriter. Output must be the same as JRXmlWriter except for element uuids.
+ */
+public class JrxmlStreamWriterTest extends TestCase {
+	private File dir;
+	private Config config;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = FileFixtures.createTempDir();
+		config = new Config();
+		config.setImgDir(new File(dir, "img").getPath() + File.separator);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileFixtures.delete(dir);
+	}
+
+	/**
+	 * Build report design of a page with text, lines, a rectangle, an image and a text field.
+	 */
+	private JasperDesign createDesign() throws Exception {
+		try (PDDocument document = new PDDocument()) {
+			PDPage page = new PDPage();
+			document.addPage(page);
+			BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+			image.setRGB(3, 3, 0x336699);
+			try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+				content.beginText();
+				content.setFont(PDType1Font.HELVETICA_BOLD, 14);
+				content.newLineAtOffset(50, 700);
+				content.showText("Name & <Address>");
+				content.endText();
+				content.setNonStrokingColor(200, 0, 0);
+				content.beginText();
+				content.setFont(PDType1Font.TIMES_ITALIC, 10);
+				content.newLineAtOffset(50, 680);
+				content.showText("Remarks");
+				content.endText();
+				content.moveTo(50, 670);
+				content.lineTo(300, 670);
+				content.stroke();
+				content.addRect(40, 500, 300, 100);
+				content.stroke();
+				content.drawImage(LosslessFactory.createFromImage(document, image), 400, 600, 32, 32);
+			}
+			PDAcroForm acroForm = new PDAcroForm(document);
+			document.getDocumentCatalog().setAcroForm(acroForm);
+			PDTextField field = new PDTextField(acroForm);
+			field.setPartialName("customer");
+			PDAnnotationWidget widget = field.getWidgets().get(0);
+			widget.setRectangle(new PDRectangle(50, 520, 200, 20));
+			widget.setPage(page);
+			page.getAnnotations().add(widget);
+			acroForm.getFields().add(field);
+
+			JrxmlReport report = new JrxmlReport();
+			Page pdfPage = report.extractElementsInPage(config, document, 0);
+			report.releaseContentEngine();
+			return report.generateDesign(config, pdfPage);
+		}
+	}
+
+	private static String stripUuids(String jrxml) {
+		return jrxml.replaceAll(" uuid=\"[^\"]*\"", "");
+	}
+
+	public void testSameOutputAsJRXmlWriter() throws Exception {
+		JasperDesign design = createDesign();
+		assertFalse(design.getTitle().getChildren().isEmpty());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JrxmlStreamWriter writer = new JrxmlStreamWriter(out, config.getEncoding());
+		writer.writeReport(design);
+		writer.close();
+		String streamed = new String(out.toByteArray(), config.getEncoding());
+		String written = JRXmlWriter.writeReport(design, config.getEncoding());
+		assertEquals(stripUuids(written), stripUuids(streamed));
+	}
+
+	public void testTextIsEscaped() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JrxmlStreamWriter writer = new JrxmlStreamWriter(out, config.getEncoding());
+		writer.writeReport(createDesign());
+		writer.close();
+		String streamed = new String(out.toByteArray(), config.getEncoding());
+		assertTrue(streamed.contains("<![CDATA[Name & <Address>]]>"));
+	}
+}
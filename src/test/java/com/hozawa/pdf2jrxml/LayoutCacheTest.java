@@ -0,0 +1,49 @@
+package com.hozawa.pdf2jrxml;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for lookup and eviction of LayoutCache.
+ */
+public class LayoutCacheTest extends TestCase {
+
+	private static LayoutCache.Layout layout(String jrxml) {
+		return new LayoutCache.Layout(jrxml.getBytes(StandardCharsets.UTF_8), Collections.<String>emptyList(),
+				Collections.<Future<Void>>emptyList());
+	}
+
+	public void testLookupByFingerprintAndContent() {
+		LayoutCache layoutCache = new LayoutCache(10);
+		LayoutCache.Layout layout = layout("<jasperReport/>");
+		layoutCache.put("layout1", "content1", layout);
+		layoutCache.putContent("content2", "layout1");	// another page with the same layout
+		assertSame(layout, layoutCache.get("layout1"));
+		assertSame(layout, layoutCache.getByContent("content1"));
+		assertSame(layout, layoutCache.getByContent("content2"));
+		assertNull(layoutCache.get("layout2"));
+		assertNull(layoutCache.getByContent("content3"));
+	}
+
+	public void testUnknownContentKeyIsNotRecorded() {
+		LayoutCache layoutCache = new LayoutCache(10);
+		layoutCache.put("layout1", null, layout("<jasperReport/>"));
+		assertNotNull(layoutCache.get("layout1"));
+		assertNull(layoutCache.getByContent(null));
+	}
+
+	public void testLeastRecentlyUsedLayoutIsRemoved() {
+		LayoutCache layoutCache = new LayoutCache(2);
+		layoutCache.put("layout1", "content1", layout("1"));
+		layoutCache.put("layout2", "content2", layout("2"));
+		assertNotNull(layoutCache.get("layout1"));	// layout2 becomes the least recently used
+		layoutCache.put("layout3", "content3", layout("3"));
+		assertNotNull(layoutCache.get("layout1"));
+		assertNull(layoutCache.get("layout2"));
+		assertNull(layoutCache.getByContent("content2"));
+		assertNotNull(layoutCache.getByContent("content3"));
+	}
+}
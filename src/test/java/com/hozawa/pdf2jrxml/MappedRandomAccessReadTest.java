@@ -0,0 +1,81 @@
+package com.hozawa.pdf2jrxml;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for MappedRandomAccessRead. Small chunks are used so that reads cross chunk boundaries.
+ */
+public class MappedRandomAccessReadTest extends TestCase {
+	private static final int CHUNK_SIZE = 7;
+
+	private static byte[] createContent(int length) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte)(i * 31);
+		}
+		return content;
+	}
+
+	private static MappedRandomAccessRead createReader(byte[] content) {
+		int numChunks = (content.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		ByteBuffer[] chunks = new ByteBuffer[numChunks];
+		for (int i = 0; i < numChunks; i++) {
+			int offset = i * CHUNK_SIZE;
+			chunks[i] = ByteBuffer.wrap(Arrays.copyOfRange(content, offset, Math.min(content.length, offset + CHUNK_SIZE)));
+		}
+		return new MappedRandomAccessRead(chunks);
+	}
+
+	public void testReadAcrossChunks() throws Exception {
+		byte[] content = createContent(50);
+		MappedRandomAccessRead reader = createReader(content);
+		assertEquals(50, reader.length());
+		byte[] bytes = new byte[50];
+		assertEquals(20, reader.read(bytes, 0, 20));
+		assertEquals(30, reader.read(bytes, 20, 40));	// only the remaining bytes are read
+		assertTrue(Arrays.equals(content, bytes));
+		assertTrue(reader.isEOF());
+		assertEquals(-1, reader.read());
+	}
+
+	public void testSeekPeekAndRewind() throws Exception {
+		byte[] content = createContent(50);
+		MappedRandomAccessRead reader = createReader(content);
+		reader.seek(13);
+		assertEquals(content[13] & 0xff, reader.peek());
+		assertEquals(content[13] & 0xff, reader.read());
+		assertEquals(content[14] & 0xff, reader.read());
+		reader.rewind(3);
+		assertEquals(12, reader.getPosition());
+		assertTrue(Arrays.equals(Arrays.copyOfRange(content, 12, 30), reader.readFully(18)));
+		assertEquals(20, reader.available());
+		reader.seek(100);
+		assertTrue(reader.isEOF());
+	}
+
+	public void testReadersHaveTheirOwnPosition() throws Exception {
+		byte[] content = createContent(20);
+		ByteBuffer chunk = ByteBuffer.wrap(content);
+		MappedRandomAccessRead reader1 = new MappedRandomAccessRead(chunk);
+		MappedRandomAccessRead reader2 = new MappedRandomAccessRead(chunk);
+		reader1.seek(10);
+		assertEquals(content[0] & 0xff, reader2.read());
+		assertEquals(content[10] & 0xff, reader1.read());
+		assertEquals(0, chunk.position());
+	}
+
+	public void testClosedReaderFails() throws Exception {
+		MappedRandomAccessRead reader = createReader(createContent(10));
+		reader.close();
+		assertTrue(reader.isClosed());
+		try {
+			reader.read();
+			fail("read from closed reader");
+		} catch (java.io.IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.hozawa.pdf2jrxml;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the content key of pages used by the page and layout caches.
+ */
+public class PageHasherTest extends TestCase {
+	private final Config config = new Config();
+	private PDDocument document;
+	private PDAcroForm acroForm;
+
+	@Override
+	protected void setUp() throws Exception {
+		document = new PDDocument();
+		acroForm = new PDAcroForm(document);
+		document.getDocumentCatalog().setAcroForm(acroForm);
+		document.addPage(new PDPage());
+		document.addPage(new PDPage());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		document.close();
+	}
+
+	private PDTextField addTextField(String name, PDPage page, PDRectangle rectangle) throws Exception {
+		PDTextField field = new PDTextField(acroForm);
+		field.setPartialName(name);
+		PDAnnotationWidget widget = field.getWidgets().get(0);
+		widget.setRectangle(rectangle);
+		widget.setPage(page);
+		page.getAnnotations().add(widget);
+		acroForm.getFields().add(field);
+		return field;
+	}
+
+	private String getKey(PDPage page) throws Exception {
+		return new PageHasher().getKey(config, document, page);
+	}
+
+	public void testSamePageHasSameKey() throws Exception {
+		PDPage page = document.getPage(0);
+		addTextField("name", page, new PDRectangle(50, 700, 200, 20));
+		assertEquals(getKey(page), getKey(page));
+	}
+
+	public void testFieldValueDoesNotChangeKey() throws Exception {
+		PDPage page = document.getPage(0);
+		PDTextField field = addTextField("name", page, new PDRectangle(50, 700, 200, 20));
+		String key = getKey(page);
+		field.getCOSObject().setString(COSName.V, "filled in");
+		assertEquals(key, getKey(page));
+	}
+
+	public void testFieldLayoutChangesKey() throws Exception {
+		PDPage page = document.getPage(0);
+		PDTextField field = addTextField("name", page, new PDRectangle(50, 700, 200, 20));
+		String key = getKey(page);
+		field.getWidgets().get(0).setRectangle(new PDRectangle(50, 600, 200, 20));
+		String movedKey = getKey(page);
+		assertFalse(key.equals(movedKey));
+		field.setPartialName("address");
+		assertFalse(movedKey.equals(getKey(page)));
+	}
+
+	public void testFieldsOfOtherPagesDoNotChangeKey() throws Exception {
+		PDPage page = document.getPage(0);
+		addTextField("name", page, new PDRectangle(50, 700, 200, 20));
+		String key = getKey(page);
+		addTextField("address", document.getPage(1), new PDRectangle(50, 700, 200, 20));
+		assertEquals(key, getKey(page));
+	}
+
+	public void testConfigurationChangesKey() throws Exception {
+		PDPage page = document.getPage(0);
+		String key = getKey(page);
+		config.setMarginLeft("20");
+		assertFalse(key.equals(getKey(page)));
+	}
+}
@@ -0,0 +1,55 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for PageRange.
+ */
+public class PageRangeTest extends TestCase {
+
+	public void testPagesAndRanges() {
+		PageRange pageRange = new PageRange("1-3, 5");
+		assertTrue(pageRange.isBounded());
+		assertEquals(Arrays.asList(0, 1, 2, 4), pageRange.getPageNos(10));
+		assertEquals(Arrays.asList(0, 1, 2, 4), pageRange.getPageNos());
+	}
+
+	public void testOverlappingRangesAreJoined() {
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), new PageRange("3-5,1-4,4").getPageNos(10));
+		assertEquals(Arrays.asList(0, 1, 2, 3), new PageRange("1-2,3-4").getPageNos(10));
+	}
+
+	public void testOpenEnd() {
+		PageRange pageRange = new PageRange("2,8-");
+		assertFalse(pageRange.isBounded());
+		assertEquals(Arrays.asList(1, 7, 8, 9), pageRange.getPageNos(10));
+		try {
+			pageRange.getPageNos();
+			fail("open range has no page list without number of pages");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	public void testOpenStart() {
+		assertEquals(Arrays.asList(0, 1), new PageRange("-2").getPageNos(10));
+	}
+
+	public void testPagesBeyondDocumentAreSkipped() {
+		assertEquals(Arrays.asList(1), new PageRange("2,20").getPageNos(5));
+		assertTrue(new PageRange("6-").getPageNos(5).isEmpty());
+	}
+
+	public void testInvalidSpecs() {
+		for (String spec : new String[] {null, "", " ", "0", "a", "5-3", "-", "1,,2", "1-b"}) {
+			try {
+				new PageRange(spec);
+				fail("accepted invalid page range: " + spec);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
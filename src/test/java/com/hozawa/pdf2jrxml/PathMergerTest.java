@@ -0,0 +1,84 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for PathMerger.
+ */
+public class PathMergerTest extends TestCase {
+	private static final float TOLERANCE = 1f;
+
+	private static PathSegment line(float x, float y, float width, float height) {
+		return new PathSegment(x, y, width, height, false);
+	}
+
+	private static PathSegment rectangle(float x, float y, float width, float height) {
+		return new PathSegment(x, y, width, height, true);
+	}
+
+	private static void assertBounds(PathSegment segment, float x, float y, float width, float height) {
+		assertEquals(x, segment.getX(), 0.001f);
+		assertEquals(y, segment.getY(), 0.001f);
+		assertEquals(width, segment.getWidth(), 0.001f);
+		assertEquals(height, segment.getHeight(), 0.001f);
+	}
+
+	public void testAbuttingSegmentsAreJoined() {
+		PathMerger merger = new PathMerger(TOLERANCE);
+		List<PathSegment> merged = merger.merge(Arrays.asList(
+				line(30, 100, 20, 0), line(0, 100, 10, 0), line(10.5f, 100, 20, 0)));
+		assertEquals(1, merged.size());
+		assertBounds(merged.get(0), 0, 100, 50, 0);
+		assertEquals(2, merger.getNumRemoved());
+	}
+
+	public void testSeparateSegmentsAreKept() {
+		List<PathSegment> merged = new PathMerger(TOLERANCE).merge(Arrays.asList(
+				line(0, 100, 10, 0), line(20, 100, 10, 0), line(0, 110, 10, 0)));
+		assertEquals(3, merged.size());
+	}
+
+	public void testVerticalSegmentsAreJoined() {
+		List<PathSegment> merged = new PathMerger(TOLERANCE).merge(Arrays.asList(
+				line(50, 0, 0, 10), line(50, 10, 0, 10), line(50.5f, 20, 0, 10)));
+		assertEquals(1, merged.size());
+		assertBounds(merged.get(0), 50, 0, 0.5f, 30);
+	}
+
+	public void testChainedOffsetsDoNotDrift() {
+		// each segment is within tolerance of the next, but the last is far from the first
+		List<PathSegment> segments = new ArrayList<PathSegment>();
+		for (int i = 0; i < 10; i++) {
+			segments.add(line(i * 10, 100 + i * 0.8f, 10, 0));
+		}
+		List<PathSegment> merged = new PathMerger(TOLERANCE).merge(segments);
+		assertTrue(merged.size() > 1);
+		for (PathSegment line : merged) {
+			assertTrue("line drifted: " + line.getHeight(), line.getHeight() <= TOLERANCE);
+		}
+	}
+
+	public void testDuplicateRectanglesAndEdgesAreRemoved() {
+		PathMerger merger = new PathMerger(TOLERANCE);
+		List<PathSegment> merged = merger.merge(Arrays.asList(
+				rectangle(0, 0, 100, 50), rectangle(0, 0, 100, 50), line(0, 50, 100, 0), line(100, 0, 0, 50)));
+		assertEquals(1, merged.size());
+		assertTrue(merged.get(0).isRectangle());
+		assertEquals(3, merger.getNumRemoved());
+	}
+
+	public void testOrderIsKept() {
+		PathSegment diagonal = line(0, 0, 50, 50);
+		PathSegment rectangle = rectangle(200, 200, 10, 10);
+		List<PathSegment> merged = new PathMerger(TOLERANCE).merge(Arrays.asList(
+				diagonal, line(0, 100, 10, 0), rectangle, line(10, 100, 10, 0)));
+		assertEquals(3, merged.size());
+		assertSame(diagonal, merged.get(0));
+		assertBounds(merged.get(1), 0, 100, 20, 0);
+		assertSame(rectangle, merged.get(2));
+	}
+}
@@ -0,0 +1,28 @@
+package com.hozawa.pdf2jrxml;
+
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the cache key of ReportCompiler.
+ */
+public class ReportCompilerTest extends TestCase {
+
+	private static byte[] jrxml(String uuid, String text) {
+		return ("<jasperReport name=\"report\" uuid=\"" + uuid + "\"><staticText><reportElement x=\"0\" y=\"0\" uuid=\""
+				+ uuid + "-1\"/><text>" + text + "</text></staticText></jasperReport>").getBytes(StandardCharsets.UTF_8);
+	}
+
+	public void testUuidsAreIgnored() {
+		assertEquals(ReportCompiler.getKey(jrxml("a7a5e3f0", "Name")), ReportCompiler.getKey(jrxml("0c1d2e3f", "Name")));
+	}
+
+	public void testDesignChangesKey() {
+		assertFalse(ReportCompiler.getKey(jrxml("a7a5e3f0", "Name")).equals(ReportCompiler.getKey(jrxml("a7a5e3f0", "Address"))));
+	}
+
+	public void testKeyIsHex() {
+		assertTrue(ReportCompiler.getKey(jrxml("a7a5e3f0", "Name")).matches("[0-9a-f]{40}"));
+	}
+}
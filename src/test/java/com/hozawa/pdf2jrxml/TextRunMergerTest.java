@@ -0,0 +1,69 @@
+package com.hozawa.pdf2jrxml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for TextRunMerger.
+ */
+public class TextRunMergerTest extends TestCase {
+	private static final float SPACING = 1f;
+
+	private static TextRun run(float x, float y, float width, int color, String text) {
+		return new TextRun(x, y, width, 7, "Helvetica", 10, 400, false, false, false, color, text);
+	}
+
+	public void testAdjacentRunsAreJoined() {
+		TextRunMerger merger = new TextRunMerger(SPACING);
+		List<TextRun> merged = merger.merge(Arrays.asList(run(45, 100, 30, 0, "World"), run(10, 100, 30, 0, "Hello")));
+		assertEquals(1, merged.size());
+		assertEquals("Hello World", merged.get(0).getText());
+		assertEquals(10f, merged.get(0).getX(), 0.001f);
+		assertEquals(65f, merged.get(0).getWidth(), 0.001f);
+		assertEquals(1, merger.getNumRemoved());
+	}
+
+	public void testTouchingRunsAreJoinedWithoutSpace() {
+		List<TextRun> merged = new TextRunMerger(SPACING).merge(Arrays.asList(run(10, 100, 20, 0, "ab"), run(30, 100, 20, 0, "cd")));
+		assertEquals(1, merged.size());
+		assertEquals("abcd", merged.get(0).getText());
+	}
+
+	public void testDifferentStyleOrLineIsNotJoined() {
+		List<TextRun> merged = new TextRunMerger(SPACING).merge(Arrays.asList(
+				run(10, 100, 30, 0, "Hello"), run(45, 100, 30, 0xff0000, "World"), run(80, 110, 30, 0, "Next")));
+		assertEquals(3, merged.size());
+	}
+
+	public void testGapLargerThanSpacingIsNotJoined() {
+		List<TextRun> merged = new TextRunMerger(SPACING).merge(Arrays.asList(run(10, 100, 30, 0, "Name"), run(60, 100, 30, 0, "Value")));
+		assertEquals(2, merged.size());
+	}
+
+	public void testLongLineIsJoinedInOrder() {
+		List<TextRun> runs = new ArrayList<TextRun>();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 999; i >= 0; i--) {
+			char c = (char)('a' + i % 26);
+			runs.add(run(i * 5, 100, 5, 0, String.valueOf(c)));
+		}
+		for (int i = 0; i < 1000; i++) {
+			expected.append((char)('a' + i % 26));
+		}
+		List<TextRun> merged = new TextRunMerger(SPACING).merge(runs);
+		assertEquals(1, merged.size());
+		assertEquals(expected.toString(), merged.get(0).getText());
+	}
+
+	public void testMergedRunTakesPlaceOfLeftmostRun() {
+		TextRun other = run(10, 200, 30, 0, "Other");
+		List<TextRun> merged = new TextRunMerger(SPACING).merge(Arrays.asList(
+				run(45, 100, 30, 0, "World"), other, run(10, 100, 30, 0, "Hello")));
+		assertEquals(2, merged.size());
+		assertSame(other, merged.get(0));
+		assertEquals("Hello World", merged.get(1).getText());
+	}
+}